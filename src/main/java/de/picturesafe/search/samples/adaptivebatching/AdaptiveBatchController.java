@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.adaptivebatching;
+
+/**
+ * Additive increase/multiplicative decrease (AIMD) controller for bulk batch sizes: the batch size grows by a fixed step as long as the
+ * observed latency stays below the target and is halved on rejections and timeouts.
+ */
+public class AdaptiveBatchController {
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int additiveIncrease;
+    private final long targetLatencyMillis;
+
+    private int batchSize;
+    private long lastLatencyMillis;
+    private long totalLatencyMillis;
+    private long batchCount;
+    private long rejectionCount;
+    private long timeoutCount;
+
+    public AdaptiveBatchController(int initialBatchSize, int minBatchSize, int maxBatchSize, int additiveIncrease, long targetLatencyMillis) {
+        if (minBatchSize < 1 || minBatchSize > maxBatchSize || additiveIncrease < 1 || targetLatencyMillis < 1) {
+            throw new IllegalArgumentException("Invalid batch controller settings!");
+        }
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.additiveIncrease = additiveIncrease;
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.batchSize = Math.max(minBatchSize, Math.min(maxBatchSize, initialBatchSize));
+    }
+
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    public synchronized void onSuccess(long latencyMillis) {
+        lastLatencyMillis = latencyMillis;
+        totalLatencyMillis += latencyMillis;
+        batchCount++;
+        // Latencies above the target stop the growth, only rejections and timeouts shrink the batch size
+        if (latencyMillis <= targetLatencyMillis) {
+            batchSize = Math.min(maxBatchSize, batchSize + additiveIncrease);
+        }
+    }
+
+    public synchronized void onRejection() {
+        rejectionCount++;
+        decrease();
+    }
+
+    public synchronized void onTimeout() {
+        timeoutCount++;
+        decrease();
+    }
+
+    public synchronized Metrics getMetrics() {
+        return new Metrics(batchSize, lastLatencyMillis, batchCount > 0 ? totalLatencyMillis / batchCount : 0, batchCount, rejectionCount,
+                timeoutCount);
+    }
+
+    private void decrease() {
+        batchSize = Math.max(minBatchSize, batchSize / 2);
+    }
+
+    public static class Metrics {
+
+        private final int batchSize;
+        private final long lastLatencyMillis;
+        private final long averageLatencyMillis;
+        private final long batchCount;
+        private final long rejectionCount;
+        private final long timeoutCount;
+
+        Metrics(int batchSize, long lastLatencyMillis, long averageLatencyMillis, long batchCount, long rejectionCount, long timeoutCount) {
+            this.batchSize = batchSize;
+            this.lastLatencyMillis = lastLatencyMillis;
+            this.averageLatencyMillis = averageLatencyMillis;
+            this.batchCount = batchCount;
+            this.rejectionCount = rejectionCount;
+            this.timeoutCount = timeoutCount;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public long getLastLatencyMillis() {
+            return lastLatencyMillis;
+        }
+
+        public long getAverageLatencyMillis() {
+            return averageLatencyMillis;
+        }
+
+        public long getBatchCount() {
+            return batchCount;
+        }
+
+        public long getRejectionCount() {
+            return rejectionCount;
+        }
+
+        public long getTimeoutCount() {
+            return timeoutCount;
+        }
+
+        @Override
+        public String toString() {
+            return "Metrics{batchSize=" + batchSize + ", lastLatencyMillis=" + lastLatencyMillis + ", averageLatencyMillis=" + averageLatencyMillis
+                    + ", batchCount=" + batchCount + ", rejectionCount=" + rejectionCount + ", timeoutCount=" + timeoutCount + "}";
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.adaptivebatching;
+
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class AdaptiveBatching implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveBatching.class);
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(AdaptiveBatching.class)) {
+            final AdaptiveBatching adaptiveBatching = ctx.getBean(AdaptiveBatching.class);
+            adaptiveBatching.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+
+            // Start with small batches, grow by 100 documents per batch as long as a batch takes less than 500 ms,
+            // halve the batch size on rejections (HTTP 429) or timeouts.
+            final AdaptiveBatchController controller = new AdaptiveBatchController(50, 10, 5000, 100, 500);
+            final AdaptiveBulkIndexer indexer
+                    = new AdaptiveBulkIndexer(elasticsearchService, restClient, indexPresetConfiguration.getIndexAlias(), controller);
+
+            final long documentCount = indexer.index(LongStream.rangeClosed(1, 50_000)
+                    .mapToObj(id -> DocumentBuilder.id(id).put("title", "This is a test title " + id).put("count", id).build())
+                    .iterator());
+            LOGGER.info("Indexed {} documents: {}", documentCount, controller.getMetrics());
+
+            final SearchResult searchResult = singleIndexElasticsearchService.search(new FulltextExpression("test title"), SearchParameter.DEFAULT);
+            LOGGER.info("Index contains {} documents", searchResult.getTotalHitCount());
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+}
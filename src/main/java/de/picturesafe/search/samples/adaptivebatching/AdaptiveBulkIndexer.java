@@ -0,0 +1,176 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.adaptivebatching;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends documents via {@link ElasticsearchService#addToIndex} in batches sized by an {@link AdaptiveBatchController}. Rejected or timed
+ * out batches are retried with the reduced batch size. All batches are sent in {@link DataChangeProcessingMode#BACKGROUND} mode, the index
+ * alias is refreshed at the end.
+ */
+public class AdaptiveBulkIndexer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveBulkIndexer.class);
+
+    private final ElasticsearchService elasticsearchService;
+    private final RestHighLevelClient restClient;
+    private final String indexAlias;
+    private final AdaptiveBatchController controller;
+    private int maxRetries = 10;
+    private long retryBackoffMillis = 200;
+
+    public AdaptiveBulkIndexer(ElasticsearchService elasticsearchService, RestHighLevelClient restClient, String indexAlias,
+                               AdaptiveBatchController controller) {
+        this.elasticsearchService = elasticsearchService;
+        this.restClient = restClient;
+        this.indexAlias = indexAlias;
+        this.controller = controller;
+    }
+
+    public AdaptiveBulkIndexer maxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    public AdaptiveBulkIndexer retryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+        return this;
+    }
+
+    public AdaptiveBatchController getController() {
+        return controller;
+    }
+
+    /**
+     * Indexes all documents and refreshes the index alias, so that all documents are searchable when it returns.
+     *
+     * @param documents Documents to index
+     * @return Number of indexed documents
+     */
+    public long index(Iterator<Map<String, Object>> documents) {
+        long documentCount = 0;
+        final List<Map<String, Object>> pending = new ArrayList<>();
+        while (documents.hasNext() || !pending.isEmpty()) {
+            final int batchSize = controller.getBatchSize();
+            while (pending.size() < batchSize && documents.hasNext()) {
+                pending.add(documents.next());
+            }
+
+            final List<Map<String, Object>> batch = new ArrayList<>(pending.subList(0, Math.min(batchSize, pending.size())));
+            send(batch);
+            pending.subList(0, batch.size()).clear();
+            documentCount += batch.size();
+        }
+
+        // BLOCKING would only cover the shards of the last batch, earlier batches may have been written to other shards
+        if (documentCount > 0) {
+            refresh();
+        }
+        return documentCount;
+    }
+
+    private void send(List<Map<String, Object>> batch) {
+        int retries = 0;
+        List<Map<String, Object>> remaining = batch;
+        while (!remaining.isEmpty()) {
+            final List<Map<String, Object>> chunk = new ArrayList<>(remaining.subList(0, Math.min(remaining.size(), controller.getBatchSize())));
+            final long start = System.nanoTime();
+            try {
+                elasticsearchService.addToIndex(indexAlias, DataChangeProcessingMode.BACKGROUND, chunk);
+                controller.onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                remaining = remaining.subList(chunk.size(), remaining.size());
+                retries = 0;
+            } catch (RuntimeException e) {
+                final boolean timeout = isTimeout(e);
+                if (!timeout && !isRejection(e)) {
+                    throw e;
+                }
+                if (timeout) {
+                    controller.onTimeout();
+                } else {
+                    controller.onRejection();
+                }
+                if (++retries > maxRetries) {
+                    throw new RuntimeException("Indexing into index alias '" + indexAlias + "' failed after " + maxRetries + " retries!", e);
+                }
+                LOGGER.debug("Batch of {} documents was {}, retrying with batch size {}", chunk.size(), timeout ? "timed out" : "rejected",
+                        controller.getBatchSize());
+                backoff(retries);
+            }
+        }
+    }
+
+    private void refresh() {
+        try {
+            restClient.indices().refresh(new RefreshRequest(indexAlias), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new RuntimeException("Refreshing index alias '" + indexAlias + "' failed!", e);
+        }
+    }
+
+    private void backoff(int retries) {
+        try {
+            Thread.sleep(retryBackoffMillis * retries);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted during retry backoff!", e);
+        }
+    }
+
+    static boolean isRejection(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof EsRejectedExecutionException) {
+                return true;
+            } else if (t instanceof ElasticsearchStatusException && ((ElasticsearchStatusException) t).status() == RestStatus.TOO_MANY_REQUESTS) {
+                return true;
+            } else if (t.getMessage() != null && t.getMessage().contains("es_rejected_execution_exception")) {
+                // Bulk item failures are only reported as message
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isTimeout(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SocketTimeoutException || t instanceof TimeoutException || t instanceof ElasticsearchTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
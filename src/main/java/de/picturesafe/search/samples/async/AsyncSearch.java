@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.async;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import de.picturesafe.search.samples.query.ResultPage;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class AsyncSearch implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncSearch.class);
+
+    private static final int DOCUMENT_COUNT = 10_000;
+    private static final int SEARCHES_PER_RUN = 2000;
+    private static final int[] CONCURRENT_CALLERS = {1, 4, 16, 64};
+    private static final String[] TERMS = {"test", "title", "test title", "1*", "2*"};
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(AsyncSearch.class)) {
+            final AsyncSearch asyncSearch = ctx.getBean(AsyncSearch.class);
+            asyncSearch.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        final ExecutorService callbackExecutor = Executors.newFixedThreadPool(2);
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+            final AsyncSearchService asyncSearchService = new AsyncSearchService(restClient, fieldConfigurationProvider, callbackExecutor);
+
+            final List<Map<String, Object>> documents = LongStream.rangeClosed(1, DOCUMENT_COUNT)
+                    .mapToObj(id -> DocumentBuilder.id(id).put("title", "This is a test title " + id).put("count", id % 100).build())
+                    .collect(Collectors.toList());
+            asyncSearchService.addToIndexAsync(indexAlias, DataChangeProcessingMode.BLOCKING, documents).join();
+
+            asyncSearchService.searchAsync(indexAlias, new FulltextExpression("test title"), SearchParameter.DEFAULT)
+                    .thenAccept(page -> LOGGER.info("Found {} documents on {} pages", page.getTotalHitCount(), page.getPageCount())).join();
+            asyncSearchService.suggestAsync(indexAlias, "This is a test title 12", 5)
+                    .thenAccept(suggestions -> LOGGER.info("Suggestions: {}", suggestions)).join();
+
+            // Load test: the blocking API needs one thread per concurrent caller, the asynchronous API serves all of them from one thread
+            for (int callers : CONCURRENT_CALLERS) {
+                final long blockingMillis = runBlocking(callers);
+                final long asyncMillis = runAsync(asyncSearchService, indexAlias, callers);
+                LOGGER.info("{} concurrent callers: blocking {} searches/s, async {} searches/s", callers,
+                        SEARCHES_PER_RUN * 1000L / Math.max(1, blockingMillis), SEARCHES_PER_RUN * 1000L / Math.max(1, asyncMillis));
+            }
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+            callbackExecutor.shutdown();
+        }
+    }
+
+    private long runBlocking(int callers) {
+        final ExecutorService callerThreads = Executors.newFixedThreadPool(callers);
+        try {
+            final long start = System.nanoTime();
+            final List<Future<?>> futures = new ArrayList<>(SEARCHES_PER_RUN);
+            for (int i = 0; i < SEARCHES_PER_RUN; i++) {
+                final Expression expression = new FulltextExpression(TERMS[i % TERMS.length]);
+                futures.add(callerThreads.submit(() -> singleIndexElasticsearchService.search(expression, SearchParameter.DEFAULT)));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } catch (Exception e) {
+            throw new RuntimeException("Blocking load test failed!", e);
+        } finally {
+            callerThreads.shutdown();
+        }
+    }
+
+    private long runAsync(AsyncSearchService asyncSearchService, String indexAlias, int callers) {
+        // The number of requests in flight is limited to the number of callers, the client queues requests exceeding its connection pool
+        final Semaphore inFlight = new Semaphore(callers);
+        final long start = System.nanoTime();
+        final List<CompletableFuture<ResultPage>> futures = new ArrayList<>(SEARCHES_PER_RUN);
+        for (int i = 0; i < SEARCHES_PER_RUN; i++) {
+            inFlight.acquireUninterruptibly();
+            final Expression expression = new FulltextExpression(TERMS[i % TERMS.length]);
+            futures.add(asyncSearchService.searchAsync(indexAlias, expression, SearchParameter.DEFAULT)
+                    .whenComplete((page, e) -> inFlight.release()));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.async;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.query.ExpressionQueryFactory;
+import de.picturesafe.search.samples.query.ResultPage;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.suggest.SuggestBuilder;
+import org.elasticsearch.search.suggest.SuggestBuilders;
+import org.elasticsearch.search.suggest.completion.CompletionSuggestion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Non-blocking variants of search, suggest and add to index based on the asynchronous requests of the {@link RestHighLevelClient}. No
+ * thread is blocked while a request is in flight.
+ * <p>
+ * Futures are completed on the callback executor. Callbacks must never run on the I/O threads of the client, blocking them would stall all
+ * requests of the client.
+ * <p>
+ * Searches are translated by the {@link ExpressionQueryFactory} instead of the library, which does not offer asynchronous requests. They
+ * therefore result in a {@link ResultPage} rather than a SearchResult, facets are not supported.
+ */
+public class AsyncSearchService {
+
+    private final RestHighLevelClient restClient;
+    private final FieldConfigurationProvider fieldConfigurationProvider;
+    private final Executor callbackExecutor;
+    private final Map<String, ExpressionQueryFactory> queryFactories = new ConcurrentHashMap<>();
+
+    public AsyncSearchService(RestHighLevelClient restClient, FieldConfigurationProvider fieldConfigurationProvider) {
+        this(restClient, fieldConfigurationProvider, ForkJoinPool.commonPool());
+    }
+
+    public AsyncSearchService(RestHighLevelClient restClient, FieldConfigurationProvider fieldConfigurationProvider, Executor callbackExecutor) {
+        this.restClient = restClient;
+        this.fieldConfigurationProvider = fieldConfigurationProvider;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    public CompletableFuture<ResultPage> searchAsync(String indexAlias, Expression expression, SearchParameter searchParameter) {
+        final SearchSourceBuilder source = getQueryFactory(indexAlias).createSearchSource(expression, searchParameter);
+        final CompletableFuture<ResultPage> future = new CompletableFuture<>();
+        restClient.searchAsync(new SearchRequest(indexAlias).source(source), RequestOptions.DEFAULT,
+                listener(future, response -> ResultPage.of(response, source), "Search in index alias '" + indexAlias + "'"));
+        return future;
+    }
+
+    /**
+     * Suggests values of the fields copied to the suggest field.
+     *
+     * @param indexAlias    Index alias
+     * @param text          Prefix to complete
+     * @param count         Maximum number of suggestions
+     * @return Future of the suggestions
+     */
+    public CompletableFuture<List<String>> suggestAsync(String indexAlias, String text, int count) {
+        final SuggestBuilder suggest = new SuggestBuilder().addSuggestion(FieldConfiguration.FIELD_NAME_SUGGEST,
+                SuggestBuilders.completionSuggestion(FieldConfiguration.FIELD_NAME_SUGGEST).prefix(text).size(count).skipDuplicates(true));
+        final SearchSourceBuilder source = new SearchSourceBuilder().suggest(suggest).size(0).fetchSource(false);
+
+        final CompletableFuture<List<String>> future = new CompletableFuture<>();
+        restClient.searchAsync(new SearchRequest(indexAlias).source(source), RequestOptions.DEFAULT,
+                listener(future, this::toSuggestions, "Suggest in index alias '" + indexAlias + "'"));
+        return future;
+    }
+
+    public CompletableFuture<Void> addToIndexAsync(String indexAlias, DataChangeProcessingMode dataChangeProcessingMode,
+                                                   List<Map<String, Object>> documents) {
+        final BulkRequest bulkRequest = new BulkRequest();
+        for (final Map<String, Object> document : documents) {
+            final Object id = document.get(FieldConfiguration.FIELD_NAME_ID);
+            if (id == null) {
+                throw new IllegalArgumentException("Document without field '" + FieldConfiguration.FIELD_NAME_ID + "': " + document);
+            }
+            bulkRequest.add(new IndexRequest(indexAlias).id(String.valueOf(id)).source(document));
+        }
+        if (dataChangeProcessingMode == DataChangeProcessingMode.BLOCKING) {
+            bulkRequest.setRefreshPolicy(WriteRequest.RefreshPolicy.WAIT_UNTIL);
+        }
+
+        final String action = "Adding documents to index alias '" + indexAlias + "'";
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        restClient.bulkAsync(bulkRequest, RequestOptions.DEFAULT, listener(future, (BulkResponse response) -> {
+            if (response.hasFailures()) {
+                throw new RuntimeException(action + " failed: " + response.buildFailureMessage());
+            }
+            return null;
+        }, action));
+        return future;
+    }
+
+    private ExpressionQueryFactory getQueryFactory(String indexAlias) {
+        return queryFactories.computeIfAbsent(indexAlias,
+                alias -> new ExpressionQueryFactory(fieldConfigurationProvider.getFieldConfigurations(alias)));
+    }
+
+    private List<String> toSuggestions(SearchResponse response) {
+        final List<String> suggestions = new ArrayList<>();
+        if (response.getSuggest() != null) {
+            final CompletionSuggestion suggestion = response.getSuggest().getSuggestion(FieldConfiguration.FIELD_NAME_SUGGEST);
+            for (final CompletionSuggestion.Entry entry : suggestion.getEntries()) {
+                for (final CompletionSuggestion.Entry.Option option : entry.getOptions()) {
+                    suggestions.add(option.getText().string());
+                }
+            }
+        }
+        return suggestions;
+    }
+
+    private <R, T> ActionListener<R> listener(CompletableFuture<T> future, Function<R, T> resultMapper, String action) {
+        return new ActionListener<R>() {
+            @Override
+            public void onResponse(R response) {
+                complete(future, () -> future.complete(resultMapper.apply(response)));
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                complete(future, () -> future.completeExceptionally(new RuntimeException(action + " failed!", e)));
+            }
+        };
+    }
+
+    private void complete(CompletableFuture<?> future, Runnable completion) {
+        try {
+            callbackExecutor.execute(() -> {
+                try {
+                    completion.run();
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+    }
+}
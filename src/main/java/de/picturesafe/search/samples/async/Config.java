@@ -0,0 +1,46 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.async;
+
+import de.picturesafe.search.elasticsearch.config.ElasticsearchType;
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.elasticsearch.config.impl.StandardFieldConfiguration;
+import de.picturesafe.search.spring.configuration.DefaultElasticConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import java.util.Arrays;
+import java.util.List;
+
+@Configuration
+@ComponentScan(basePackages = {"de.picturesafe.search.elasticsearch"})
+@Import({DefaultElasticConfiguration.class})
+public class Config {
+
+    @Bean
+    List<FieldConfiguration> fieldConfigurations() {
+        return Arrays.asList(
+                FieldConfiguration.ID_FIELD,
+                FieldConfiguration.FULLTEXT_FIELD,
+                FieldConfiguration.SUGGEST_FIELD,
+                StandardFieldConfiguration.builder("title", ElasticsearchType.TEXT).copyToFulltext(true).copyToSuggest(true).sortable(true).build(),
+                StandardFieldConfiguration.builder("count", ElasticsearchType.INTEGER).sortable(true).build()
+        );
+    }
+}
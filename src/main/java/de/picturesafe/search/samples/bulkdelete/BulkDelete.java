@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.bulkdelete;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+import de.picturesafe.search.expression.DayRangeExpression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.InExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import de.picturesafe.search.samples.bulkindexing.BulkIndexer;
+import de.picturesafe.search.samples.query.ExpressionQueryFactory;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class BulkDelete implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkDelete.class);
+
+    private static final int DOCUMENT_COUNT = 20_000;
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(BulkDelete.class)) {
+            final BulkDelete bulkDelete = ctx.getBean(BulkDelete.class);
+            bulkDelete.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+
+            // One document per day, the oldest ones are expired
+            final LocalDate today = LocalDate.now();
+            try (BulkIndexer bulkIndexer = BulkIndexer.builder(elasticsearchService, restClient, indexAlias).build()) {
+                LongStream.rangeClosed(1, DOCUMENT_COUNT).forEach(id -> bulkIndexer.add(DocumentBuilder.id(id)
+                        .put("title", "This is a test title " + id)
+                        .put("count", id)
+                        .put("created", toDate(today.minusDays(id)))
+                        .build()));
+                bulkIndexer.flush();
+            }
+            logDocumentCount("Initial index");
+
+            final BulkDeleter bulkDeleter = new BulkDeleter(restClient, indexAlias,
+                    new ExpressionQueryFactory(fieldConfigurationProvider.getFieldConfigurations(indexAlias)))
+                    .batchSize(1000)
+                    .maxConcurrentRequests(4)
+                    .requestsPerSecond(5000)
+                    .pollIntervalMillis(200);
+
+            // Remove documents by ID
+            final List<Long> ids = LongStream.rangeClosed(1, 5000).boxed().collect(Collectors.toList());
+            LOGGER.info("Removed {} documents by ID", bulkDeleter.removeFromIndex(DataChangeProcessingMode.BLOCKING, ids));
+            logDocumentCount("After removal by ID");
+
+            // Remove expired documents via a sliced and throttled server side task
+            final long deletedCount = bulkDeleter.removeFromIndex(DataChangeProcessingMode.BLOCKING, OperationExpression.or(
+                    new DayRangeExpression("created", toDate(today.minusDays(DOCUMENT_COUNT)), toDate(today.minusDays(10_000))),
+                    new InExpression("count", 5001L, 5002L, 5003L)),
+                    progress -> LOGGER.info("Delete progress: {}", progress));
+            LOGGER.info("Removed {} documents by expression", deletedCount);
+            logDocumentCount("After removal by expression");
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+
+    private void logDocumentCount(String stage) {
+        final SearchResult searchResult = singleIndexElasticsearchService.search(new FulltextExpression("test title"), SearchParameter.DEFAULT);
+        LOGGER.info("{}: index contains {} documents", stage, searchResult.getTotalHitCount());
+    }
+
+    private Date toDate(LocalDate localDate) {
+        return Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.bulkdelete;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.samples.query.ExpressionQueryFactory;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.reindex.AbstractBulkByScrollRequest;
+import org.elasticsearch.index.reindex.DeleteByQueryRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Removes large sets of documents from an index alias: by ID via batched and concurrent bulk requests or by {@link Expression} via a
+ * sliced and throttled delete-by-query task running on the cluster.
+ */
+public class BulkDeleter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkDeleter.class);
+
+    private final RestHighLevelClient restClient;
+    private final String indexAlias;
+    private final ExpressionQueryFactory queryFactory;
+    private int batchSize = 1000;
+    private int maxConcurrentRequests = 4;
+    private float requestsPerSecond = Float.POSITIVE_INFINITY;
+    private long pollIntervalMillis = 1000;
+
+    public BulkDeleter(RestHighLevelClient restClient, String indexAlias, ExpressionQueryFactory queryFactory) {
+        this.restClient = restClient;
+        this.indexAlias = indexAlias;
+        this.queryFactory = queryFactory;
+    }
+
+    public BulkDeleter batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public BulkDeleter maxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        return this;
+    }
+
+    // Throttles delete-by-expression tasks, Float.POSITIVE_INFINITY disables throttling.
+    public BulkDeleter requestsPerSecond(float requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+        return this;
+    }
+
+    public BulkDeleter pollIntervalMillis(long pollIntervalMillis) {
+        this.pollIntervalMillis = pollIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Removes documents by ID.
+     *
+     * @param dataChangeProcessingMode  BLOCKING waits until the removal is visible to searches
+     * @param ids                       IDs of the documents to remove
+     * @return Number of removed documents, IDs not found in the index are not counted
+     */
+    public long removeFromIndex(DataChangeProcessingMode dataChangeProcessingMode, Collection<?> ids) {
+        final Semaphore requestPermits = new Semaphore(maxConcurrentRequests);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final AtomicLong deletedCount = new AtomicLong();
+
+        BulkRequest bulkRequest = new BulkRequest();
+        for (final Object id : ids) {
+            bulkRequest.add(new DeleteRequest(indexAlias, String.valueOf(id)));
+            if (bulkRequest.numberOfActions() >= batchSize) {
+                sendAsync(bulkRequest, requestPermits, failure, deletedCount);
+                bulkRequest = new BulkRequest();
+            }
+            if (failure.get() != null) {
+                break;
+            }
+        }
+        if (bulkRequest.numberOfActions() > 0 && failure.get() == null) {
+            sendAsync(bulkRequest, requestPermits, failure, deletedCount);
+        }
+
+        acquire(requestPermits, maxConcurrentRequests);
+        if (failure.get() != null) {
+            throw new RuntimeException("Removing documents from index alias '" + indexAlias + "' failed!", failure.get());
+        }
+        if (dataChangeProcessingMode == DataChangeProcessingMode.BLOCKING) {
+            refresh();
+        }
+        return deletedCount.get();
+    }
+
+    /**
+     * Removes all documents matching the expression.
+     *
+     * @param dataChangeProcessingMode  BLOCKING waits until the removal is visible to searches
+     * @param expression                Expression matching the documents to remove
+     * @return Number of removed documents
+     */
+    public long removeFromIndex(DataChangeProcessingMode dataChangeProcessingMode, Expression expression) {
+        return removeFromIndex(dataChangeProcessingMode, expression, progress -> LOGGER.debug("{}", progress));
+    }
+
+    /**
+     * Removes all documents matching the expression via a delete-by-query task. The task is split into slices processed in parallel by
+     * the cluster, its progress is polled until it has completed. A task stopped by an error or by search or bulk failures fails the
+     * removal, after the listener has received the final progress including the failures. The result document of the completed task is
+     * removed from the {@code .tasks} index, the task is cancelled if the calling thread is interrupted while waiting.
+     *
+     * @param dataChangeProcessingMode  BLOCKING waits until the removal is visible to searches
+     * @param expression                Expression matching the documents to remove
+     * @param progressListener          Listener called on every poll
+     * @return Number of removed documents
+     */
+    public long removeFromIndex(DataChangeProcessingMode dataChangeProcessingMode, Expression expression,
+                                Consumer<DeleteProgress> progressListener) {
+        final DeleteByQueryRequest request = new DeleteByQueryRequest(indexAlias);
+        request.setQuery(queryFactory.createQuery(expression));
+        request.setSlices(AbstractBulkByScrollRequest.AUTO_SLICES);
+        request.setBatchSize(batchSize);
+        request.setRequestsPerSecond(requestsPerSecond);
+        // Documents changed concurrently are skipped instead of aborting the whole task
+        request.setAbortOnVersionConflict(false);
+        request.setRefresh(dataChangeProcessingMode == DataChangeProcessingMode.BLOCKING);
+
+        final String taskId;
+        try {
+            taskId = restClient.submitDeleteByQueryTask(request, RequestOptions.DEFAULT).getTask();
+        } catch (IOException e) {
+            throw new RuntimeException("Removing documents from index alias '" + indexAlias + "' by expression failed!", e);
+        }
+        LOGGER.info("Submitted delete-by-query task {} for index alias '{}'", taskId, indexAlias);
+
+        try {
+            final DeleteProgress progress = awaitCompletion(taskId, progressListener);
+            if (!progress.getFailures().isEmpty()) {
+                throw new IllegalStateException("Delete-by-query task " + taskId + " failed after deleting " + progress.getDeletedCount()
+                        + " documents: " + progress.getFailures());
+            }
+            return progress.getDeletedCount();
+        } catch (IOException e) {
+            throw new RuntimeException("Removing documents from index alias '" + indexAlias + "' by expression failed!", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            performTaskRequest(new Request("POST", "/_tasks/" + taskId + "/_cancel"), "Cancelling");
+            throw new RuntimeException("Interrupted while waiting for delete-by-query task!", e);
+        }
+    }
+
+    private DeleteProgress awaitCompletion(String taskId, Consumer<DeleteProgress> progressListener) throws IOException, InterruptedException {
+        while (true) {
+            final DeleteProgress progress = getProgress(taskId);
+            progressListener.accept(progress);
+            if (progress.isCompleted()) {
+                // The result of a task submitted with wait_for_completion=false is kept in the .tasks index until it is deleted
+                performTaskRequest(new Request("DELETE", "/.tasks/_doc/" + taskId), "Deleting the result of");
+                return progress;
+            }
+            Thread.sleep(pollIntervalMillis);
+        }
+    }
+
+    private void performTaskRequest(Request request, String action) {
+        try {
+            restClient.getLowLevelClient().performRequest(request);
+        } catch (IOException e) {
+            LOGGER.warn("{} delete-by-query task via {} {} failed", action, request.getMethod(), request.getEndpoint(), e);
+        }
+    }
+
+    // The task API of the high level client omits the error and the response of completed tasks, so the task is read via the low level client
+    @SuppressWarnings("unchecked")
+    private DeleteProgress getProgress(String taskId) throws IOException {
+        final Response response = restClient.getLowLevelClient().performRequest(new Request("GET", "/_tasks/" + taskId));
+        final Map<String, Object> task;
+        try (InputStream in = response.getEntity().getContent()) {
+            task = XContentHelper.convertToMap(XContentType.JSON.xContent(), in, false);
+        }
+
+        final boolean completed = Boolean.TRUE.equals(task.get("completed"));
+        final Map<String, Object> taskResponse = (Map<String, Object>) task.get("response");
+        final Map<String, Object> status = (completed && taskResponse != null) ? taskResponse : getStatus(task);
+        final List<String> failures = new ArrayList<>();
+        if (task.get("error") != null) {
+            failures.add(String.valueOf(task.get("error")));
+        }
+        if (taskResponse != null && taskResponse.get("failures") instanceof List) {
+            ((List<Object>) taskResponse.get("failures")).forEach(failure -> failures.add(String.valueOf(failure)));
+        }
+        return new DeleteProgress(taskId, longValue(status.get("total")), longValue(status.get("deleted")),
+                longValue(status.get("version_conflicts")), failures, completed);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getStatus(Map<String, Object> task) {
+        final Object taskInfo = task.get("task");
+        final Object status = (taskInfo instanceof Map) ? ((Map<String, Object>) taskInfo).get("status") : null;
+        return (status instanceof Map) ? (Map<String, Object>) status : Collections.emptyMap();
+    }
+
+    private void sendAsync(BulkRequest bulkRequest, Semaphore requestPermits, AtomicReference<Exception> failure, AtomicLong deletedCount) {
+        acquire(requestPermits, 1);
+        restClient.bulkAsync(bulkRequest, RequestOptions.DEFAULT, new ActionListener<BulkResponse>() {
+            @Override
+            public void onResponse(BulkResponse response) {
+                if (response.hasFailures()) {
+                    failure.compareAndSet(null, new IllegalStateException(response.buildFailureMessage()));
+                }
+                for (final BulkItemResponse item : response.getItems()) {
+                    if (!item.isFailed() && item.getResponse().getResult() == DocWriteResponse.Result.DELETED) {
+                        deletedCount.incrementAndGet();
+                    }
+                }
+                requestPermits.release();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                failure.compareAndSet(null, e);
+                requestPermits.release();
+            }
+        });
+    }
+
+    private void refresh() {
+        try {
+            restClient.indices().refresh(new RefreshRequest(indexAlias), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new RuntimeException("Refreshing index alias '" + indexAlias + "' failed!", e);
+        }
+    }
+
+    private void acquire(Semaphore semaphore, int permits) {
+        try {
+            semaphore.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while removing documents!", e);
+        }
+    }
+
+    private static long longValue(Object value) {
+        return (value instanceof Number) ? ((Number) value).longValue() : 0;
+    }
+}
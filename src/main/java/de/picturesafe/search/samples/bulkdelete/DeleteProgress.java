@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.bulkdelete;
+
+import java.util.List;
+
+/**
+ * Progress of a delete-by-expression task.
+ */
+public class DeleteProgress {
+
+    private final String taskId;
+    private final long totalCount;
+    private final long deletedCount;
+    private final long versionConflictCount;
+    private final List<String> failures;
+    private final boolean completed;
+
+    public DeleteProgress(String taskId, long totalCount, long deletedCount, long versionConflictCount, List<String> failures,
+                          boolean completed) {
+        this.taskId = taskId;
+        this.totalCount = totalCount;
+        this.deletedCount = deletedCount;
+        this.versionConflictCount = versionConflictCount;
+        this.failures = failures;
+        this.completed = completed;
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getDeletedCount() {
+        return deletedCount;
+    }
+
+    public long getVersionConflictCount() {
+        return versionConflictCount;
+    }
+
+    /**
+     * Gets the failures of the task, a task with failures has been stopped before all matching documents were deleted.
+     *
+     * @return Task error and search or bulk failures, empty if the task has not failed (yet)
+     */
+    public List<String> getFailures() {
+        return failures;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    @Override
+    public String toString() {
+        return "DeleteProgress{taskId='" + taskId + "', total=" + totalCount + ", deleted=" + deletedCount + ", versionConflicts="
+                + versionConflictCount + ", failures=" + failures.size() + ", completed=" + completed + "}";
+    }
+}
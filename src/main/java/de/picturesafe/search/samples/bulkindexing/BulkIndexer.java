@@ -0,0 +1,302 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.bulkindexing;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Groups documents into batches capped by document count and estimated byte size and sends them concurrently
+ * with a bounded number of requests in flight. Full batches are sent in {@link DataChangeProcessingMode#BACKGROUND} mode,
+ * {@link #flush()} sends the remaining documents, waits for all requests and refreshes the index alias so that all documents are
+ * searchable when it returns.
+ */
+public class BulkIndexer implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkIndexer.class);
+
+    public static final int DEFAULT_MAX_BATCH_DOCUMENTS = 1000;
+    public static final long DEFAULT_MAX_BATCH_BYTES = 5 * 1024 * 1024;
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+
+    private final ElasticsearchService elasticsearchService;
+    private final RestHighLevelClient restClient;
+    private final String indexAlias;
+    private final int maxBatchDocuments;
+    private final long maxBatchBytes;
+    private final ExecutorService executorService;
+    private final Semaphore requestPermits;
+    private final int maxConcurrentRequests;
+
+    private final AtomicLong indexedDocuments = new AtomicLong();
+    private final AtomicLong sentBatches = new AtomicLong();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    private List<Map<String, Object>> currentBatch = new ArrayList<>();
+    private long currentBatchBytes;
+    // Full batches sent since the last flush, they are not necessarily visible yet
+    private boolean unrefreshedBatches;
+    private long startTime;
+
+    private BulkIndexer(Builder builder) {
+        this.elasticsearchService = builder.elasticsearchService;
+        this.restClient = builder.restClient;
+        this.indexAlias = builder.indexAlias;
+        this.maxBatchDocuments = builder.maxBatchDocuments;
+        this.maxBatchBytes = builder.maxBatchBytes;
+        this.maxConcurrentRequests = builder.maxConcurrentRequests;
+        this.executorService = Executors.newFixedThreadPool(maxConcurrentRequests);
+        this.requestPermits = new Semaphore(maxConcurrentRequests);
+    }
+
+    public static Builder builder(ElasticsearchService elasticsearchService, RestHighLevelClient restClient, String indexAlias) {
+        return new Builder(elasticsearchService, restClient, indexAlias);
+    }
+
+    public void add(Map<String, Object> document) {
+        checkFailure();
+        if (startTime == 0) {
+            startTime = System.nanoTime();
+        }
+
+        final long documentBytes = estimateSize(document);
+        if (!currentBatch.isEmpty() && (currentBatch.size() >= maxBatchDocuments || currentBatchBytes + documentBytes > maxBatchBytes)) {
+            submit(currentBatch);
+            unrefreshedBatches = true;
+            currentBatch = new ArrayList<>();
+            currentBatchBytes = 0;
+        }
+        currentBatch.add(document);
+        currentBatchBytes += documentBytes;
+    }
+
+    public void addAll(Collection<Map<String, Object>> documents) {
+        documents.forEach(this::add);
+    }
+
+    /**
+     * Sends the remaining documents, waits for all requests in flight and makes the documents visible to searches.
+     *
+     * @return Statistics of the documents sent since the previous flush
+     */
+    public Statistics flush() {
+        final List<Map<String, Object>> lastBatch = currentBatch;
+        currentBatch = new ArrayList<>();
+        currentBatchBytes = 0;
+
+        awaitInFlightRequests();
+        checkFailure();
+        if (unrefreshedBatches) {
+            // BLOCKING only covers the shards of the last batch, earlier batches may have been written to other shards
+            if (!lastBatch.isEmpty()) {
+                send(lastBatch, DataChangeProcessingMode.BACKGROUND);
+            }
+            refresh();
+            unrefreshedBatches = false;
+        } else if (!lastBatch.isEmpty()) {
+            send(lastBatch, DataChangeProcessingMode.BLOCKING);
+        }
+
+        final Statistics statistics = new Statistics(indexedDocuments.getAndSet(0), sentBatches.getAndSet(0),
+                startTime > 0 ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) : 0);
+        startTime = 0;
+        LOGGER.debug("Flushed bulk indexer for index alias '{}': {}", indexAlias, statistics);
+        return statistics;
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private void submit(List<Map<String, Object>> batch) {
+        try {
+            requestPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a free bulk request slot!", e);
+        }
+
+        try {
+            executorService.execute(() -> {
+                try {
+                    send(batch, DataChangeProcessingMode.BACKGROUND);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    requestPermits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            requestPermits.release();
+            throw e;
+        }
+    }
+
+    private void send(List<Map<String, Object>> batch, DataChangeProcessingMode dataChangeProcessingMode) {
+        elasticsearchService.addToIndex(indexAlias, dataChangeProcessingMode, batch);
+        indexedDocuments.addAndGet(batch.size());
+        sentBatches.incrementAndGet();
+    }
+
+    private void refresh() {
+        try {
+            restClient.indices().refresh(new RefreshRequest(indexAlias), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new RuntimeException("Refreshing index alias '" + indexAlias + "' failed!", e);
+        }
+    }
+
+    private void awaitInFlightRequests() {
+        try {
+            requestPermits.acquire(maxConcurrentRequests);
+            requestPermits.release(maxConcurrentRequests);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for bulk requests to complete!", e);
+        }
+    }
+
+    private void checkFailure() {
+        final RuntimeException e = failure.getAndSet(null);
+        if (e != null) {
+            throw new RuntimeException("Bulk indexing into index alias '" + indexAlias + "' failed!", e);
+        }
+    }
+
+    // Rough estimation of the JSON size of a document, good enough to cap the size of bulk requests.
+    static long estimateSize(Object value) {
+        if (value == null) {
+            return 4;
+        } else if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() + 2;
+        } else if (value instanceof Number || value instanceof Boolean) {
+            return 20;
+        } else if (value instanceof Date) {
+            return 26;
+        } else if (value instanceof Map) {
+            long size = 2;
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += String.valueOf(entry.getKey()).length() + 4 + estimateSize(entry.getValue());
+            }
+            return size;
+        } else if (value instanceof Collection) {
+            long size = 2;
+            for (final Object element : (Collection<?>) value) {
+                size += estimateSize(element) + 1;
+            }
+            return size;
+        } else {
+            return String.valueOf(value).length() + 2;
+        }
+    }
+
+    public static class Statistics {
+
+        private final long documentCount;
+        private final long batchCount;
+        private final long elapsedMillis;
+
+        Statistics(long documentCount, long batchCount, long elapsedMillis) {
+            this.documentCount = documentCount;
+            this.batchCount = batchCount;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public long getDocumentCount() {
+            return documentCount;
+        }
+
+        public long getBatchCount() {
+            return batchCount;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public double getDocumentsPerSecond() {
+            return elapsedMillis > 0 ? documentCount * 1000.0 / elapsedMillis : documentCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d documents in %d batches within %d ms (%.1f docs/sec)", documentCount, batchCount, elapsedMillis,
+                    getDocumentsPerSecond());
+        }
+    }
+
+    public static class Builder {
+
+        private final ElasticsearchService elasticsearchService;
+        private final RestHighLevelClient restClient;
+        private final String indexAlias;
+        private int maxBatchDocuments = DEFAULT_MAX_BATCH_DOCUMENTS;
+        private long maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+        private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+
+        private Builder(ElasticsearchService elasticsearchService, RestHighLevelClient restClient, String indexAlias) {
+            this.elasticsearchService = elasticsearchService;
+            this.restClient = restClient;
+            this.indexAlias = indexAlias;
+        }
+
+        public Builder maxBatchDocuments(int maxBatchDocuments) {
+            this.maxBatchDocuments = maxBatchDocuments;
+            return this;
+        }
+
+        public Builder maxBatchBytes(long maxBatchBytes) {
+            this.maxBatchBytes = maxBatchBytes;
+            return this;
+        }
+
+        public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
+        public BulkIndexer build() {
+            if (maxBatchDocuments < 1 || maxBatchBytes < 1 || maxConcurrentRequests < 1) {
+                throw new IllegalArgumentException("Batch limits and number of concurrent requests must be positive!");
+            }
+            return new BulkIndexer(this);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.bulkindexing;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class BulkIndexing implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkIndexing.class);
+
+    private static final int PER_DOCUMENT_COUNT = 100;
+    private static final int BULK_COUNT = 20_000;
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(BulkIndexing.class)) {
+            final BulkIndexing bulkIndexing = ctx.getBean(BulkIndexing.class);
+            bulkIndexing.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+
+            // Benchmark: one BLOCKING addToIndex call per document (see Pagination sample)
+            final long start = System.nanoTime();
+            LongStream.rangeClosed(1, PER_DOCUMENT_COUNT)
+                    .forEach(id -> singleIndexElasticsearchService.addToIndex(DataChangeProcessingMode.BLOCKING, createDocument(id)));
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            LOGGER.info("Per-document indexing: {} documents within {} ms ({} docs/sec)", PER_DOCUMENT_COUNT, elapsedMillis,
+                    String.format("%.1f", PER_DOCUMENT_COUNT * 1000.0 / Math.max(elapsedMillis, 1)));
+
+            // Benchmark: batched and concurrent indexing with a single refresh at the end
+            final BulkIndexer.Statistics statistics;
+            try (BulkIndexer bulkIndexer = BulkIndexer.builder(elasticsearchService, restClient, indexPresetConfiguration.getIndexAlias())
+                    .maxBatchDocuments(1000)
+                    .maxBatchBytes(2 * 1024 * 1024)
+                    .maxConcurrentRequests(4)
+                    .build()) {
+                LongStream.rangeClosed(PER_DOCUMENT_COUNT + 1, PER_DOCUMENT_COUNT + BULK_COUNT).forEach(id -> bulkIndexer.add(createDocument(id)));
+                statistics = bulkIndexer.flush();
+            }
+            LOGGER.info("Bulk indexing: {}", statistics);
+
+            final SearchResult searchResult = singleIndexElasticsearchService.search(new FulltextExpression("test title"), SearchParameter.DEFAULT);
+            LOGGER.info("Index contains {} documents", searchResult.getTotalHitCount());
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+
+    private Map<String, Object> createDocument(long id) {
+        return DocumentBuilder.id(id).put("title", "This is a test title " + id).put("count", id).build();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.changedetection;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class ChangeDetection implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeDetection.class);
+
+    private static final int DOCUMENT_COUNT = 1000;
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(ChangeDetection.class)) {
+            final ChangeDetection changeDetection = ctx.getBean(ChangeDetection.class);
+            changeDetection.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        Path hashStoreFile = null;
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            hashStoreFile = Files.createTempFile("picturesafe-search-sample", ".hashes");
+            Files.delete(hashStoreFile);
+
+            // Initial ingestion: all documents are new
+            ingest(hashStoreFile, 0);
+
+            // Nightly re-ingestion after a restart: the hash store is reopened from disk and only every 10th document has changed
+            ingest(hashStoreFile, 10);
+        } catch (IOException e) {
+            throw new RuntimeException("Creating hash store file failed!", e);
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+            if (hashStoreFile != null) {
+                hashStoreFile.toFile().delete();
+            }
+        }
+    }
+
+    private void ingest(Path hashStoreFile, int changeEveryNth) {
+        final String indexAlias = indexPresetConfiguration.getIndexAlias();
+        try (ChangeDetector changeDetector = new ChangeDetector(elasticsearchService, indexAlias,
+                fieldConfigurationProvider.getFieldConfigurations(indexAlias), hashStoreFile, DOCUMENT_COUNT)) {
+            final List<Map<String, Object>> documents = LongStream.rangeClosed(1, DOCUMENT_COUNT)
+                    .mapToObj(id -> DocumentBuilder.id(id)
+                            .put("title", "This is a test title " + id)
+                            .put("count", (changeEveryNth > 0 && id % changeEveryNth == 0) ? id * 2 : id).build())
+                    .collect(Collectors.toList());
+
+            final int sentCount = changeDetector.addToIndex(DataChangeProcessingMode.BLOCKING, documents);
+            LOGGER.info("Sent {} of {} documents, skip ratio: {}", sentCount, changeDetector.getProcessedCount(),
+                    String.format("%.2f", changeDetector.getSkipRatio()));
+        }
+    }
+}
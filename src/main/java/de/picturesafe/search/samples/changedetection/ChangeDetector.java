@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.changedetection;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Change detection stage in front of {@link ElasticsearchService#addToIndex}: documents are only forwarded if their content hash differs
+ * from the hash stored for their id at the last successful write. The id to hash store is a memory-mapped file and survives restarts.
+ */
+public class ChangeDetector implements AutoCloseable {
+
+    private final ElasticsearchService elasticsearchService;
+    private final String indexAlias;
+    private final DocumentHasher documentHasher;
+    private final MappedLongLongMap hashStore;
+
+    private long processedCount;
+    private long skippedCount;
+
+    public ChangeDetector(ElasticsearchService elasticsearchService, String indexAlias, List<? extends FieldConfiguration> fieldConfigurations,
+                          Path hashStoreFile, int expectedDocumentCount) {
+        this.elasticsearchService = elasticsearchService;
+        this.indexAlias = indexAlias;
+        this.documentHasher = new DocumentHasher(fieldConfigurations);
+        this.hashStore = new MappedLongLongMap(hashStoreFile, expectedDocumentCount);
+    }
+
+    /**
+     * Adds new or changed documents to the index, unchanged documents are skipped.
+     *
+     * @param dataChangeProcessingMode  Data change processing mode
+     * @param documents                 Documents to add
+     * @return Number of documents actually sent to Elasticsearch
+     */
+    public synchronized int addToIndex(DataChangeProcessingMode dataChangeProcessingMode, List<Map<String, Object>> documents) {
+        final List<Map<String, Object>> changedDocuments = new ArrayList<>(documents.size());
+        final long[] ids = new long[documents.size()];
+        final long[] hashes = new long[documents.size()];
+
+        for (final Map<String, Object> document : documents) {
+            final Object id = document.get(FieldConfiguration.FIELD_NAME_ID);
+            final long hash = documentHasher.hash(document);
+            if (id instanceof Number) {
+                final long longId = ((Number) id).longValue();
+                if (hashStore.containsKey(longId) && hashStore.get(longId, 0) == hash) {
+                    skippedCount++;
+                    continue;
+                }
+                ids[changedDocuments.size()] = longId;
+                hashes[changedDocuments.size()] = hash;
+            } else {
+                // Documents without numeric id cannot be tracked and are always forwarded
+                ids[changedDocuments.size()] = Long.MIN_VALUE;
+            }
+            changedDocuments.add(document);
+        }
+        processedCount += documents.size();
+
+        if (!changedDocuments.isEmpty()) {
+            elasticsearchService.addToIndex(indexAlias, dataChangeProcessingMode, changedDocuments);
+            // Hashes are only stored after a successful write, so failed documents will be sent again next time.
+            for (int i = 0; i < changedDocuments.size(); i++) {
+                if (ids[i] != Long.MIN_VALUE) {
+                    hashStore.put(ids[i], hashes[i]);
+                }
+            }
+        }
+        return changedDocuments.size();
+    }
+
+    // Must be called when documents are removed from the index, otherwise re-adding an unchanged document would be skipped.
+    public synchronized void forget(long id) {
+        if (hashStore.containsKey(id)) {
+            // The store has no delete operation, a hash of 0 never matches a real document hash in practice.
+            hashStore.put(id, 0);
+        }
+    }
+
+    public synchronized long getProcessedCount() {
+        return processedCount;
+    }
+
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    public synchronized double getSkipRatio() {
+        return processedCount > 0 ? (double) skippedCount / processedCount : 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        hashStore.close();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.changedetection;
+
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Calculates a 64 bit content hash (FNV-1a) of the canonical form of a document: configured fields in the order of the field configuration,
+ * followed by all other fields in alphabetical order. Two documents with equal content get the same hash regardless of map implementation
+ * and insertion order.
+ */
+public class DocumentHasher {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final List<String> fieldOrder = new ArrayList<>();
+    private final Set<String> orderedFields = new HashSet<>();
+
+    public DocumentHasher(List<? extends FieldConfiguration> fieldConfigurations) {
+        for (final FieldConfiguration fieldConfiguration : fieldConfigurations) {
+            fieldOrder.add(fieldConfiguration.getName());
+            orderedFields.add(fieldConfiguration.getName());
+        }
+    }
+
+    public long hash(Map<String, ?> document) {
+        long hash = FNV_OFFSET_BASIS;
+        for (final String fieldName : fieldOrder) {
+            if (document.containsKey(fieldName)) {
+                hash = hashField(hash, fieldName, document.get(fieldName));
+            }
+        }
+
+        final List<String> otherFields = new ArrayList<>();
+        for (final String fieldName : document.keySet()) {
+            if (!orderedFields.contains(fieldName)) {
+                otherFields.add(fieldName);
+            }
+        }
+        Collections.sort(otherFields);
+        for (final String fieldName : otherFields) {
+            hash = hashField(hash, fieldName, document.get(fieldName));
+        }
+        return hash;
+    }
+
+    private long hashField(long hash, String name, Object value) {
+        hash = hashString(hash, name);
+        hash = hashByte(hash, '=');
+        return hashValue(hash, value);
+    }
+
+    private long hashValue(long hash, Object value) {
+        if (value == null) {
+            return hashByte(hash, 'N');
+        } else if (value instanceof Map) {
+            hash = hashByte(hash, '{');
+            for (final Map.Entry<?, ?> entry : new TreeMap<>((Map<?, ?>) value).entrySet()) {
+                hash = hashField(hash, String.valueOf(entry.getKey()), entry.getValue());
+            }
+            return hashByte(hash, '}');
+        } else if (value instanceof Collection) {
+            hash = hashByte(hash, '[');
+            for (final Object element : (Collection<?>) value) {
+                hash = hashByte(hashValue(hash, element), ',');
+            }
+            return hashByte(hash, ']');
+        } else if (value instanceof Date) {
+            return hashLong(hashByte(hash, 'D'), ((Date) value).getTime());
+        } else if (value instanceof Number && !(value instanceof Double || value instanceof Float)) {
+            return hashLong(hashByte(hash, 'L'), ((Number) value).longValue());
+        } else {
+            return hashString(hashByte(hash, 'S'), value.toString());
+        }
+    }
+
+    private static long hashString(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            hash = hashByte(hash, c >>> 8);
+            hash = hashByte(hash, c);
+        }
+        return hashByte(hash, 0);
+    }
+
+    private static long hashLong(long hash, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            hash = hashByte(hash, (int) (value >>> shift));
+        }
+        return hash;
+    }
+
+    private static long hashByte(long hash, int b) {
+        return (hash ^ (b & 0xff)) * FNV_PRIME;
+    }
+}
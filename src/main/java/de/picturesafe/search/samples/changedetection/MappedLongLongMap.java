@@ -0,0 +1,207 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.changedetection;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Primitive long to long hash map (open addressing, linear probing) stored in a memory-mapped file, so it lives off-heap and survives
+ * restarts. The map is limited to one mapped region below 2 GB, i.e. 2^26 slots of 16 bytes (1 GB) and about 47 million entries at the
+ * maximum load factor of 0.7.
+ */
+public class MappedLongLongMap implements Closeable {
+
+    private static final long MAGIC = 0x7073734C4C4D6170L;
+    private static final int HEADER_SIZE = 64;
+    private static final int ENTRY_SIZE = 16;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int SIZE_OFFSET = 16;
+    private static final int HAS_ZERO_KEY_OFFSET = 24;
+    private static final int ZERO_KEY_VALUE_OFFSET = 32;
+    private static final int MAX_CAPACITY = Integer.highestOneBit((Integer.MAX_VALUE - HEADER_SIZE) / ENTRY_SIZE);
+    private static final double MAX_LOAD_FACTOR = 0.7;
+
+    // 0 marks an empty slot, the value of key 0 is stored in the header
+    private static final long EMPTY_KEY = 0;
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+
+    public MappedLongLongMap(Path file, int initialCapacity) {
+        this.file = file;
+        try {
+            if (Files.exists(file) && Files.size(file) > 0) {
+                open(file);
+                if (buffer.getLong(MAGIC_OFFSET) != MAGIC) {
+                    throw new IllegalStateException("File '" + file + "' is no long map file!");
+                }
+                capacity = (int) buffer.getLong(CAPACITY_OFFSET);
+                size = (int) buffer.getLong(SIZE_OFFSET);
+            } else {
+                capacity = tableSizeFor(initialCapacity);
+                create(file, capacity);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Opening long map file '" + file + "' failed!", e);
+        }
+    }
+
+    public int size() {
+        return size + (buffer.getLong(HAS_ZERO_KEY_OFFSET) != 0 ? 1 : 0);
+    }
+
+    public boolean containsKey(long key) {
+        if (key == EMPTY_KEY) {
+            return buffer.getLong(HAS_ZERO_KEY_OFFSET) != 0;
+        }
+        return getLong(keyOffset(findSlot(key))) == key;
+    }
+
+    public long get(long key, long defaultValue) {
+        if (key == EMPTY_KEY) {
+            return buffer.getLong(HAS_ZERO_KEY_OFFSET) != 0 ? buffer.getLong(ZERO_KEY_VALUE_OFFSET) : defaultValue;
+        }
+        final int slot = findSlot(key);
+        return getLong(keyOffset(slot)) == key ? getLong(keyOffset(slot) + 8) : defaultValue;
+    }
+
+    public void put(long key, long value) {
+        if (key == EMPTY_KEY) {
+            buffer.putLong(HAS_ZERO_KEY_OFFSET, 1);
+            buffer.putLong(ZERO_KEY_VALUE_OFFSET, value);
+            return;
+        }
+
+        final int slot = findSlot(key);
+        final int offset = keyOffset(slot);
+        if (getLong(offset) != key) {
+            if (size + 1 > capacity * MAX_LOAD_FACTOR) {
+                resize();
+                put(key, value);
+                return;
+            }
+            buffer.putLong(offset, key);
+            size++;
+            buffer.putLong(SIZE_OFFSET, size);
+        }
+        buffer.putLong(offset + 8, value);
+    }
+
+    public void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Closing long map file '" + file + "' failed!", e);
+        }
+    }
+
+    private int findSlot(long key) {
+        final int mask = capacity - 1;
+        int slot = (int) mix(key) & mask;
+        long slotKey;
+        while ((slotKey = getLong(keyOffset(slot))) != EMPTY_KEY && slotKey != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        if (capacity >= MAX_CAPACITY) {
+            throw new IllegalStateException("Long map file '" + file + "' exceeds the maximum capacity of " + MAX_CAPACITY + " slots!");
+        }
+
+        final Path tmpFile = file.resolveSibling(file.getFileName() + ".resize");
+        final MappedByteBuffer oldBuffer = buffer;
+        final FileChannel oldChannel = channel;
+        final int oldCapacity = capacity;
+        try {
+            capacity = oldCapacity * 2;
+            size = 0;
+            create(tmpFile, capacity);
+            buffer.putLong(HAS_ZERO_KEY_OFFSET, oldBuffer.getLong(HAS_ZERO_KEY_OFFSET));
+            buffer.putLong(ZERO_KEY_VALUE_OFFSET, oldBuffer.getLong(ZERO_KEY_VALUE_OFFSET));
+            for (int slot = 0; slot < oldCapacity; slot++) {
+                final long key = oldBuffer.getLong(keyOffset(slot));
+                if (key != EMPTY_KEY) {
+                    put(key, oldBuffer.getLong(keyOffset(slot) + 8));
+                }
+            }
+            buffer.force();
+            channel.close();
+            oldChannel.close();
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            open(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Resizing long map file '" + file + "' failed!", e);
+        }
+    }
+
+    private void create(Path path, int capacity) throws IOException {
+        Files.deleteIfExists(path);
+        open(path);
+        buffer.putLong(MAGIC_OFFSET, MAGIC);
+        buffer.putLong(CAPACITY_OFFSET, capacity);
+        buffer.putLong(SIZE_OFFSET, 0);
+    }
+
+    private void open(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final long fileSize = channel.size() > 0 ? channel.size() : HEADER_SIZE + (long) capacity * ENTRY_SIZE;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+    }
+
+    private long getLong(int offset) {
+        return buffer.getLong(offset);
+    }
+
+    private static int keyOffset(int slot) {
+        return HEADER_SIZE + slot * ENTRY_SIZE;
+    }
+
+    private static int tableSizeFor(int expectedEntries) {
+        final int minCapacity = (int) Math.min(MAX_CAPACITY, Math.ceil(Math.max(expectedEntries, 16) / MAX_LOAD_FACTOR));
+        return Math.min(MAX_CAPACITY, Integer.highestOneBit(minCapacity - 1) << 1);
+    }
+
+    // Finalizer of MurmurHash3, spreads sequential ids over the table
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb53ad34e858bL;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.coalescing;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class CoalescedSearch implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoalescedSearch.class);
+
+    private static final int CONCURRENT_CALLERS = 200;
+    private static final int ROUNDS = 5;
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(CoalescedSearch.class)) {
+            final CoalescedSearch coalescedSearch = ctx.getBean(CoalescedSearch.class);
+            coalescedSearch.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        final ExecutorService callers = Executors.newFixedThreadPool(CONCURRENT_CALLERS);
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            singleIndexElasticsearchService.addToIndex(DataChangeProcessingMode.BLOCKING, LongStream.rangeClosed(1, 1000)
+                    .mapToObj(id -> DocumentBuilder.id(id).put("title", "This is a test title " + id).put("count", id % 10).build())
+                    .collect(Collectors.toList()));
+
+            final CoalescingSearchService searchService
+                    = new CoalescingSearchService(singleIndexElasticsearchService, indexPresetConfiguration.getIndexAlias());
+            for (int round = 1; round <= ROUNDS; round++) {
+                // A popular page has been invalidated: all callers send the same search at the same moment
+                final CountDownLatch start = new CountDownLatch(1);
+                final List<Future<Long>> results = new ArrayList<>(CONCURRENT_CALLERS);
+                for (int i = 0; i < CONCURRENT_CALLERS; i++) {
+                    // Every caller builds its own expression, operands in different order are still identical searches
+                    final boolean reversed = i % 2 == 0;
+                    results.add(callers.submit(() -> {
+                        start.await();
+                        final FulltextExpression fulltext = new FulltextExpression("test title");
+                        final ValueExpression count = new ValueExpression("count", 5);
+                        final SearchResult searchResult = searchService.search(
+                                reversed ? OperationExpression.and(count, fulltext) : OperationExpression.and(fulltext, count), SearchParameter.DEFAULT);
+                        return (long) searchResult.getTotalHitCount();
+                    }));
+                }
+                start.countDown();
+                for (final Future<Long> result : results) {
+                    result.get();
+                }
+                LOGGER.info("Round {}: {}", round, searchService);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Coalesced search failed!", e);
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+            callers.shutdown();
+        }
+    }
+}
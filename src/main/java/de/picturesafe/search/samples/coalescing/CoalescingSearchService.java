@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.coalescing;
+
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.resultcache.SearchCacheKey;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces identical concurrent searches: while a search is in flight, callers sending the same search (same canonical expression and
+ * search parameter, see {@link SearchCacheKey}) wait for it and share its result instead of sending another request. Searches started
+ * after the in-flight search has completed are sent again, so no result is served from the past.
+ * <p>
+ * Coalesced callers receive the same {@link SearchResult} instance and must not modify it.
+ */
+public class CoalescingSearchService {
+
+    private final SingleIndexElasticsearchService singleIndexElasticsearchService;
+    private final String indexAlias;
+    private final ConcurrentMap<SearchCacheKey, CompletableFuture<SearchResult>> inFlightSearches = new ConcurrentHashMap<>();
+
+    private final LongAdder searchCount = new LongAdder();
+    private final LongAdder executedCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    public CoalescingSearchService(SingleIndexElasticsearchService singleIndexElasticsearchService, String indexAlias) {
+        this.singleIndexElasticsearchService = singleIndexElasticsearchService;
+        this.indexAlias = indexAlias;
+    }
+
+    public SearchResult search(Expression expression, SearchParameter searchParameter) {
+        searchCount.increment();
+        final SearchCacheKey key = SearchCacheKey.create(indexAlias, expression, searchParameter);
+        final CompletableFuture<SearchResult> future = new CompletableFuture<>();
+        final CompletableFuture<SearchResult> inFlightSearch = inFlightSearches.putIfAbsent(key, future);
+        if (inFlightSearch != null) {
+            coalescedCount.increment();
+            return await(inFlightSearch);
+        }
+
+        executedCount.increment();
+        try {
+            final SearchResult searchResult = singleIndexElasticsearchService.search(expression, searchParameter);
+            // Removed before completion, so callers arriving afterwards do not get the completed result
+            inFlightSearches.remove(key, future);
+            future.complete(searchResult);
+            return searchResult;
+        } catch (RuntimeException | Error e) {
+            inFlightSearches.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public long getSearchCount() {
+        return searchCount.sum();
+    }
+
+    // Searches sent to Elasticsearch
+    public long getExecutedCount() {
+        return executedCount.sum();
+    }
+
+    // Searches sharing the result of an identical search in flight
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    public int getInFlightCount() {
+        return inFlightSearches.size();
+    }
+
+    @Override
+    public String toString() {
+        return "CoalescingSearchService{searches=" + getSearchCount() + ", executed=" + getExecutedCount() + ", coalesced=" + getCoalescedCount()
+                + ", inFlight=" + getInFlightCount() + "}";
+    }
+
+    private SearchResult await(CompletableFuture<SearchResult> inFlightSearch) {
+        try {
+            return inFlightSearch.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
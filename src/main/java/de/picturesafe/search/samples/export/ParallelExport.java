@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.export;
+
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import de.picturesafe.search.samples.bulkindexing.BulkIndexer;
+import de.picturesafe.search.samples.query.ExpressionQueryFactory;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+@Component
+@ComponentScan
+public class ParallelExport implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelExport.class);
+
+    private static final int DOCUMENT_COUNT = 100_000;
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(ParallelExport.class)) {
+            final ParallelExport parallelExport = ctx.getBean(ParallelExport.class);
+            parallelExport.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        Path exportFile = null;
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+            try (BulkIndexer bulkIndexer = BulkIndexer.builder(elasticsearchService, restClient, indexAlias).build()) {
+                LongStream.rangeClosed(1, DOCUMENT_COUNT).forEach(id -> bulkIndexer.add(DocumentBuilder.id(id)
+                        .put("title", "This is a test title " + id)
+                        .put("count", id % 100)
+                        .build()));
+                bulkIndexer.flush();
+            }
+
+            final ExpressionQueryFactory queryFactory = new ExpressionQueryFactory(fieldConfigurationProvider.getFieldConfigurations(indexAlias));
+            final Expression expression = OperationExpression.and(
+                    new FulltextExpression("test title"), new ValueExpression("count", ValueExpression.Comparison.LT, 80));
+
+            // Throughput scales with the number of slices until the cluster or the consumer is saturated
+            for (int slices : new int[] {1, 2, 4, 8}) {
+                final SlicedExporter exporter = new SlicedExporter(restClient, indexAlias, queryFactory).slices(slices).batchSize(1000);
+                final long start = System.nanoTime();
+                final long count;
+                try (Stream<?> items = exporter.stream(expression)) {
+                    count = items.count();
+                }
+                LOGGER.info("Exported {} documents with {} slices within {} ms", count, slices,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+
+            exportFile = Files.createTempFile("picturesafe-search-export", ".ndjson.gz");
+            final long start = System.nanoTime();
+            final long count = new SlicedExporter(restClient, indexAlias, queryFactory).slices(4).exportNdjson(expression, exportFile);
+            LOGGER.info("Exported {} documents into {} ({} bytes) within {} ms", count, exportFile, Files.size(exportFile),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            throw new RuntimeException("Export failed!", e);
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+            deleteFile(exportFile);
+        }
+    }
+
+    private void deleteFile(Path file) {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.warn("Deleting file '{}' failed", file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.export;
+
+import de.picturesafe.search.elasticsearch.model.SearchResultItem;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.samples.query.ExpressionQueryFactory;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports all documents matching an {@link Expression} from an index alias. The documents are split into slices read in parallel by
+ * scroll searches, the hits are handed over to the consumer through a bounded queue, so memory use is limited to
+ * <code>queueCapacity * batchSize</code> documents plus one batch per slice in flight.
+ * <p>
+ * Every slice reads the state of the index at the time its scroll is opened. The slices are opened independently, so the export is
+ * not a consistent snapshot of the whole index alias: documents changed while the slices are being opened may be missing or exported
+ * in their old or new state.
+ * <p>
+ * Streams returned by {@link #stream(Expression)} must be closed to release the scrolls if they are not consumed completely.
+ */
+public class SlicedExporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlicedExporter.class);
+
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+    // Marks the end of a slice in the queue
+    private static final List<SearchHit> END_OF_SLICE = Collections.emptyList();
+
+    private final RestHighLevelClient restClient;
+    private final String indexAlias;
+    private final ExpressionQueryFactory queryFactory;
+    private int slices = 4;
+    private int batchSize = 1000;
+    private int queueCapacity = 8;
+    private TimeValue keepAlive = TimeValue.timeValueMinutes(1);
+    private ExecutorService executorService;
+
+    public SlicedExporter(RestHighLevelClient restClient, String indexAlias, ExpressionQueryFactory queryFactory) {
+        this.restClient = restClient;
+        this.indexAlias = indexAlias;
+        this.queryFactory = queryFactory;
+    }
+
+    public SlicedExporter slices(int slices) {
+        if (slices < 1) {
+            throw new IllegalArgumentException("Number of slices must be positive!");
+        }
+        this.slices = slices;
+        return this;
+    }
+
+    public SlicedExporter batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    // Maximum number of batches read ahead of the consumer
+    public SlicedExporter queueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    // Maximum time between the requests of a slice
+    public SlicedExporter keepAlive(long keepAlive, TimeUnit timeUnit) {
+        this.keepAlive = TimeValue.timeValueMillis(timeUnit.toMillis(keepAlive));
+        return this;
+    }
+
+    // Executor reading the slices, by default a thread pool with one thread per slice is created for each export
+    public SlicedExporter executorService(ExecutorService executorService) {
+        this.executorService = executorService;
+        return this;
+    }
+
+    /**
+     * Exports documents as a lazy stream. The order of the documents is undefined.
+     *
+     * @param expression Expression matching the documents to export
+     * @return Stream of search result items, must be closed if not consumed completely to stop reading the remaining slices
+     */
+    public Stream<SearchResultItem> stream(Expression expression) {
+        return hits(expression).map(hit -> new SearchResultItem(hit.getSourceAsMap()));
+    }
+
+    /**
+     * Exports documents into a gzip compressed file with one JSON document per line (NDJSON). The sources are written as returned by
+     * Elasticsearch without parsing them, documents indexed via picturesafe-search are stored as single line JSON.
+     *
+     * @param expression    Expression matching the documents to export
+     * @param file          File to write, an existing file is replaced
+     * @return Number of exported documents
+     */
+    public long exportNdjson(Expression expression, Path file) {
+        long count = 0;
+        try (Stream<SearchHit> hits = hits(expression);
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream out = new BufferedOutputStream(new GZIPOutputStream(Channels.newOutputStream(channel), FILE_BUFFER_SIZE), FILE_BUFFER_SIZE)) {
+            final Iterator<SearchHit> iterator = hits.iterator();
+            while (iterator.hasNext()) {
+                iterator.next().getSourceRef().writeTo(out);
+                out.write('\n');
+                count++;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Exporting index alias '" + indexAlias + "' to file '" + file + "' failed!", e);
+        }
+        return count;
+    }
+
+    private Stream<SearchHit> hits(Expression expression) {
+        final QueryBuilder query = queryFactory.createQuery(expression);
+        final HitSpliterator spliterator = new HitSpliterator(slices, queueCapacity);
+        final ExecutorService sliceExecutor = (executorService != null) ? executorService : Executors.newFixedThreadPool(slices);
+        final List<Future<?>> sliceReaders = new ArrayList<>(slices);
+        final AtomicInteger runningSlices = new AtomicInteger(slices);
+        for (int slice = 0; slice < slices; slice++) {
+            final int sliceId = slice;
+            sliceReaders.add(sliceExecutor.submit(() -> {
+                try {
+                    readSlice(query, sliceId, spliterator);
+                } finally {
+                    // The own thread pool ends with the last slice, even if the stream is never closed
+                    if (runningSlices.decrementAndGet() == 0 && sliceExecutor != executorService) {
+                        sliceExecutor.shutdown();
+                    }
+                }
+            }));
+        }
+
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            // Interrupts slice readers blocked on the full queue
+            sliceReaders.forEach(sliceReader -> sliceReader.cancel(true));
+            if (sliceExecutor != executorService) {
+                sliceExecutor.shutdownNow();
+            }
+        });
+    }
+
+    private void readSlice(QueryBuilder query, int sliceId, HitSpliterator spliterator) {
+        String scrollId = null;
+        try {
+            // Sorting by _doc is the cheapest order for reading all hits
+            final SearchSourceBuilder source = new SearchSourceBuilder().query(query).size(batchSize).sort(SortBuilders.fieldSort("_doc"));
+            if (slices > 1) {
+                source.slice(new SliceBuilder(sliceId, slices));
+            }
+            SearchResponse response = restClient.search(new SearchRequest(indexAlias).source(source).scroll(keepAlive), RequestOptions.DEFAULT);
+            scrollId = response.getScrollId();
+            while (response.getHits().getHits().length > 0) {
+                spliterator.put(Arrays.asList(response.getHits().getHits()));
+                response = restClient.scroll(new SearchScrollRequest(scrollId).scroll(keepAlive), RequestOptions.DEFAULT);
+                scrollId = response.getScrollId();
+            }
+        } catch (InterruptedException e) {
+            // Export has been closed
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            spliterator.fail(new RuntimeException("Exporting slice " + sliceId + " of index alias '" + indexAlias + "' failed!", e));
+        } finally {
+            clearScroll(scrollId);
+            spliterator.endOfSlice();
+        }
+    }
+
+    private void clearScroll(String scrollId) {
+        if (scrollId != null) {
+            final ClearScrollRequest request = new ClearScrollRequest();
+            request.addScrollId(scrollId);
+            try {
+                restClient.clearScroll(request, RequestOptions.DEFAULT);
+            } catch (Exception e) {
+                // The search context is released after the keep alive time anyway
+                LOGGER.warn("Clearing scroll of index alias '{}' failed", indexAlias, e);
+            }
+        }
+    }
+
+    private static class HitSpliterator extends Spliterators.AbstractSpliterator<SearchHit> {
+
+        private final BlockingQueue<List<SearchHit>> queue;
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        private int openSlices;
+        private Iterator<SearchHit> batch = Collections.emptyIterator();
+
+        HitSpliterator(int slices, int queueCapacity) {
+            super(Long.MAX_VALUE, Spliterator.NONNULL);
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.openSlices = slices;
+        }
+
+        void put(List<SearchHit> hits) throws InterruptedException {
+            queue.put(hits);
+        }
+
+        void fail(RuntimeException e) {
+            failure.compareAndSet(null, e);
+        }
+
+        void endOfSlice() {
+            try {
+                queue.put(END_OF_SLICE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super SearchHit> action) {
+            while (!batch.hasNext()) {
+                checkFailure();
+                if (openSlices == 0) {
+                    return false;
+                }
+                final List<SearchHit> hits = take();
+                if (hits == END_OF_SLICE) {
+                    openSlices--;
+                } else {
+                    batch = hits.iterator();
+                }
+            }
+            action.accept(batch.next());
+            return true;
+        }
+
+        private List<SearchHit> take() {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Export has been interrupted!", e);
+            }
+        }
+
+        private void checkFailure() {
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+        }
+    }
+}
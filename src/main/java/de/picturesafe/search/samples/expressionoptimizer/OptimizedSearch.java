@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.expressionoptimizer;
+
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.RangeValueExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import de.picturesafe.search.samples.bulkindexing.BulkIndexer;
+import de.picturesafe.search.samples.query.ExpressionOptimizer;
+import de.picturesafe.search.samples.query.ExpressionQueryFactory;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class OptimizedSearch implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OptimizedSearch.class);
+
+    private static final int DOCUMENT_COUNT = 10_000;
+    private static final int BENCHMARK_SEARCH_COUNT = 200;
+    private static final String[] COLORS = {"red", "green", "blue", "yellow", "black", "white"};
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(OptimizedSearch.class)) {
+            final OptimizedSearch optimizedSearch = ctx.getBean(OptimizedSearch.class);
+            optimizedSearch.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+            try (BulkIndexer bulkIndexer = BulkIndexer.builder(elasticsearchService, restClient, indexAlias).build()) {
+                LongStream.rangeClosed(1, DOCUMENT_COUNT).forEach(id -> bulkIndexer.add(DocumentBuilder.id(id)
+                        .put("title", "This is a test title " + id)
+                        .put("count", id % 100)
+                        .put("color", COLORS[(int) (id % COLORS.length)])
+                        .build()));
+                bulkIndexer.flush();
+            }
+
+            // Redundant tree as built by UI code: nested ANDs, duplicate clauses and several equality tests on the same field
+            final Expression expression = OperationExpression.and(
+                    OperationExpression.and(
+                            new FulltextExpression("test title"),
+                            OperationExpression.and(new FulltextExpression("test title"))),
+                    OperationExpression.or(
+                            new ValueExpression("color", "red"),
+                            new ValueExpression("color", "blue"),
+                            OperationExpression.or(new ValueExpression("color", "green"), new ValueExpression("color", "red"))),
+                    new MustNotExpression(new MustNotExpression(new RangeValueExpression("count", 10, 60))));
+
+            final List<? extends FieldConfiguration> fieldConfigurations = fieldConfigurationProvider.getFieldConfigurations(indexAlias);
+            final Expression optimizedExpression = new ExpressionOptimizer(fieldConfigurations).optimize(expression);
+            final ExpressionQueryFactory queryFactory = new ExpressionQueryFactory(fieldConfigurations);
+            LOGGER.info("Original expression: {} bytes of query JSON", queryFactory.createQuery(expression).toString().length());
+            LOGGER.info("Optimized expression: {} bytes of query JSON", queryFactory.createQuery(optimizedExpression).toString().length());
+
+            // Both expressions must match exactly the same documents
+            final SearchParameter allResults = SearchParameter.builder().pageSize(DOCUMENT_COUNT).pageIndex(1).sortOptions(SortOption.asc("id")).build();
+            final List<String> ids = getIds(singleIndexElasticsearchService.search(expression, allResults));
+            final List<String> optimizedIds = getIds(singleIndexElasticsearchService.search(optimizedExpression, allResults));
+            if (!ids.equals(optimizedIds)) {
+                throw new IllegalStateException("Optimized expression matches different documents!");
+            }
+            LOGGER.info("Both expressions match the same {} documents", ids.size());
+
+            final SearchParameter firstPage = SearchParameter.builder().pageSize(20).pageIndex(1).build();
+            LOGGER.info("Original expression: {} searches within {} ms", BENCHMARK_SEARCH_COUNT, benchmark(expression, firstPage));
+            LOGGER.info("Optimized expression: {} searches within {} ms", BENCHMARK_SEARCH_COUNT, benchmark(optimizedExpression, firstPage));
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+
+    private long benchmark(Expression expression, SearchParameter searchParameter) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_SEARCH_COUNT; i++) {
+            singleIndexElasticsearchService.search(expression, searchParameter);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private List<String> getIds(SearchResult searchResult) {
+        return searchResult.getSearchResultItems().stream().map(item -> String.valueOf(item.getId())).collect(Collectors.toList());
+    }
+}
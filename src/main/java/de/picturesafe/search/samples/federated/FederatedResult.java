@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.federated;
+
+import de.picturesafe.search.samples.query.ResultPage;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merged result of a search over several index aliases.
+ */
+public class FederatedResult {
+
+    private final ResultPage resultPage;
+    private final List<String> indexAliases;
+    private final Map<String, Map<String, Long>> facets;
+
+    FederatedResult(ResultPage resultPage, List<String> indexAliases, Map<String, Map<String, Long>> facets) {
+        this.resultPage = resultPage;
+        this.indexAliases = indexAliases;
+        this.facets = facets;
+    }
+
+    public ResultPage getResultPage() {
+        return resultPage;
+    }
+
+    /**
+     * Gets the index alias an item of the result page was found in. The alias is kept apart from the attributes of the item, so it
+     * cannot collide with a field of the documents.
+     *
+     * @param position Position of the item within the result page
+     * @return Index alias
+     */
+    public String getIndexAlias(int position) {
+        return indexAliases.get(position);
+    }
+
+    /**
+     * Gets the facets merged over all index aliases.
+     *
+     * @return Document counts per value ordered by count, mapped by field name
+     */
+    public Map<String, Map<String, Long>> getFacets() {
+        return facets;
+    }
+}
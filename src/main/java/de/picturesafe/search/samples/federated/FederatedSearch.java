@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.federated;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.elasticsearch.model.SearchResultItem;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static de.picturesafe.search.samples.federated.Config.FIRST_INDEX_ALIAS;
+import static de.picturesafe.search.samples.federated.Config.SECOND_INDEX_ALIAS;
+
+@Component
+@ComponentScan
+public class FederatedSearch implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FederatedSearch.class);
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(FederatedSearch.class)) {
+            final FederatedSearch federatedSearch = ctx.getBean(FederatedSearch.class);
+            federatedSearch.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            elasticsearchService.createIndexWithAlias(FIRST_INDEX_ALIAS);
+            elasticsearchService.createIndexWithAlias(SECOND_INDEX_ALIAS);
+            createTestRecords();
+
+            final FederatedSearchService federatedSearchService = new FederatedSearchService(restClient, fieldConfigurationProvider);
+            final List<String> indexAliases = Arrays.asList(FIRST_INDEX_ALIAS, SECOND_INDEX_ALIAS);
+
+            // Hits of both aliases are ranked together
+            FederatedResult result = federatedSearchService.search(indexAliases, new FulltextExpression("Hamburg"),
+                    SearchParameter.builder().pageSize(10).pageIndex(1).build(), Collections.singletonList("city"), 10);
+            showResult(result);
+
+            // Sorted by a field of both aliases and paginated over the merged hits
+            final SearchParameter secondPage = SearchParameter.builder().pageSize(2).pageIndex(2).sortOptions(SortOption.desc("created")).build();
+            result = federatedSearchService.search(indexAliases, new FulltextExpression("Hamburg OR Berlin"), secondPage,
+                    Collections.singletonList("city"), 10);
+            showResult(result);
+        } finally {
+            elasticsearchService.deleteIndexWithAlias(FIRST_INDEX_ALIAS);
+            elasticsearchService.deleteIndexWithAlias(SECOND_INDEX_ALIAS);
+        }
+    }
+
+    private void createTestRecords() {
+        final long now = System.currentTimeMillis();
+        elasticsearchService.addToIndex(FIRST_INDEX_ALIAS, DataChangeProcessingMode.BLOCKING, Arrays.asList(
+                DocumentBuilder.id(1).put("title", "Harbour tour Hamburg").put("city", "Hamburg").put("created", new Date(now - DAY_MILLIS)).build(),
+                DocumentBuilder.id(2).put("title", "Hamburg Berlin by train").put("city", "Berlin").put("created", new Date(now - 3 * DAY_MILLIS)).build(),
+                DocumentBuilder.id(3).put("title", "Museums in Berlin").put("city", "Berlin").put("created", new Date(now - 5 * DAY_MILLIS)).build()
+        ));
+
+        elasticsearchService.addToIndex(SECOND_INDEX_ALIAS, DataChangeProcessingMode.BLOCKING, Arrays.asList(
+                DocumentBuilder.id(1).put("firstname", "John").put("lastname", "Hamburg").put("city", "Hamburg")
+                        .put("created", new Date(now - 2 * DAY_MILLIS)).build(),
+                DocumentBuilder.id(2).put("firstname", "Jane").put("lastname", "Doe").put("city", "Berlin")
+                        .put("created", new Date(now - 4 * DAY_MILLIS)).build()
+        ));
+    }
+
+    private void showResult(FederatedResult result) {
+        LOGGER.info("Found {} hits, page {} of {}:", result.getResultPage().getTotalHitCount(), result.getResultPage().getPageIndex(),
+                result.getResultPage().getPageCount());
+        final List<SearchResultItem> items = result.getResultPage().getSearchResultItems();
+        for (int i = 0; i < items.size(); i++) {
+            final SearchResultItem item = items.get(i);
+            // Field names differ between the aliases
+            final Object name = (item.getAttribute("title") != null) ? item.getAttribute("title") : item.getAttribute("lastname");
+            LOGGER.info("{}: id = {}, {}", result.getIndexAlias(i), item.getId(), name);
+        }
+        LOGGER.info("Facets: {}", result.getFacets());
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.federated;
+
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.elasticsearch.model.SearchResultItem;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.samples.query.ExpressionQueryFactory;
+import de.picturesafe.search.samples.query.ResultPage;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.client.GetAliasesResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.filter.Filter;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Searches several index aliases with a single request. The expression is translated per alias using the field configurations of the
+ * alias and restricted to the indexes of the alias, so field names and types may differ between the aliases. Elasticsearch merges the
+ * hits of all aliases into one sorted and paginated result, facets are merged by value. Each facet aggregation is restricted to the
+ * indexes of the aliases it applies to. Responses with shard failures or timeouts are rejected instead of returning partial results.
+ * <p>
+ * An index belonging to several of the aliases is searched and aggregated as part of the first of them only, so its documents are
+ * neither translated with two field configurations nor counted twice in the facets.
+ * <p>
+ * Sort fields have to be sorted by the same Elasticsearch field in all aliases defining them. The indexes of the aliases are resolved for
+ * every search, so alias switches are picked up immediately.
+ */
+public class FederatedSearchService {
+
+    private static final String FACET_PREFIX = "facet:";
+    private static final String FACET_VALUES = "values";
+    private static final String KEYWORD_SUFFIX = ".keyword";
+
+    private final RestHighLevelClient restClient;
+    private final FieldConfigurationProvider fieldConfigurationProvider;
+    private final Map<String, ExpressionQueryFactory> queryFactories = new ConcurrentHashMap<>();
+    private boolean distributedFrequencies = true;
+
+    public FederatedSearchService(RestHighLevelClient restClient, FieldConfigurationProvider fieldConfigurationProvider) {
+        this.restClient = restClient;
+        this.fieldConfigurationProvider = fieldConfigurationProvider;
+    }
+
+    // Scores searches sorted by relevance with term frequencies of all indexes, so scores of different aliases are comparable.
+    public FederatedSearchService distributedFrequencies(boolean distributedFrequencies) {
+        this.distributedFrequencies = distributedFrequencies;
+        return this;
+    }
+
+    /**
+     * Searches several index aliases.
+     *
+     * @param indexAliases      Index aliases
+     * @param expression        Expression
+     * @param searchParameter   Search parameter defining paging and sort options
+     * @param facetFields       Fields to return facets for
+     * @param maxFacetValues    Maximum number of values per facet
+     * @return Merged result
+     */
+    public FederatedResult search(List<String> indexAliases, Expression expression, SearchParameter searchParameter, List<String> facetFields,
+                                  int maxFacetValues) {
+        if (indexAliases.isEmpty()) {
+            throw new IllegalArgumentException("At least one index alias is required!");
+        }
+        final Map<String, Set<String>> indexesByAlias = resolveIndexes(indexAliases);
+        final BoolQueryBuilder query = QueryBuilders.boolQuery();
+        indexesByAlias.forEach((indexAlias, indexes) -> query.should(QueryBuilders.boolQuery()
+                .filter(QueryBuilders.termsQuery("_index", indexes))
+                .must(getQueryFactory(indexAlias).createQuery(expression, searchParameter))));
+
+        final SearchSourceBuilder source = ExpressionQueryFactory.createPagedSource(searchParameter).query(query);
+        addSorts(source, indexAliases, searchParameter.getSortOptions());
+        final Map<String, Set<String>> facetAggregations = addFacets(source, indexesByAlias, facetFields, maxFacetValues);
+
+        final SearchRequest request = new SearchRequest(indexAliases.toArray(new String[0])).source(source);
+        if (distributedFrequencies && getQueryFactory(indexAliases.get(0)).isSortedByRelevance(searchParameter)) {
+            request.searchType(SearchType.DFS_QUERY_THEN_FETCH);
+        }
+        final SearchResponse response;
+        try {
+            response = restClient.search(request, RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new RuntimeException("Search in index aliases " + indexAliases + " failed!", e);
+        }
+        final ShardSearchFailure[] shardFailures = response.getShardFailures();
+        if (shardFailures.length > 0) {
+            throw new IllegalStateException("Search in index aliases " + indexAliases + " failed on " + shardFailures.length + " shards: "
+                    + Arrays.toString(shardFailures));
+        }
+        if (response.isTimedOut()) {
+            throw new IllegalStateException("Search in index aliases " + indexAliases + " timed out!");
+        }
+
+        final List<SearchResultItem> items = new ArrayList<>();
+        final List<String> itemIndexAliases = new ArrayList<>();
+        for (final SearchHit hit : response.getHits().getHits()) {
+            items.add(new SearchResultItem(hit.getSourceAsMap()));
+            itemIndexAliases.add(getIndexAlias(indexesByAlias, hit.getIndex()));
+        }
+        final ResultPage resultPage = new ResultPage(items, response.getHits().getTotalHits().value, ResultPage.getPageIndex(source), source.size());
+        return new FederatedResult(resultPage, itemIndexAliases, mergeFacets(response, facetAggregations, maxFacetValues));
+    }
+
+    // Indexes mapped by alias, an index belonging to several of the aliases is only mapped to the first of them
+    private Map<String, Set<String>> resolveIndexes(List<String> indexAliases) {
+        final GetAliasesResponse response;
+        try {
+            response = restClient.indices().getAlias(new GetAliasesRequest(indexAliases.toArray(new String[0])), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new RuntimeException("Resolving index aliases " + indexAliases + " failed!", e);
+        }
+
+        // Ordered like the requested aliases
+        final Map<String, Set<String>> indexesByAlias = new LinkedHashMap<>();
+        indexAliases.forEach(indexAlias -> indexesByAlias.put(indexAlias, new HashSet<>()));
+        response.getAliases().forEach((index, aliases) -> aliases.forEach(alias -> {
+            if (indexesByAlias.containsKey(alias.alias())) {
+                indexesByAlias.get(alias.alias()).add(index);
+            }
+        }));
+        final Set<String> missingAliases = new HashSet<>();
+        indexesByAlias.forEach((indexAlias, indexes) -> {
+            if (indexes.isEmpty()) {
+                missingAliases.add(indexAlias);
+            }
+        });
+        if (!missingAliases.isEmpty()) {
+            throw new IllegalArgumentException("Index aliases " + missingAliases + " do not exist!");
+        }
+
+        final Set<String> assignedIndexes = new HashSet<>();
+        final Map<String, Set<String>> exclusiveIndexesByAlias = new LinkedHashMap<>();
+        indexesByAlias.forEach((indexAlias, indexes) -> {
+            final Set<String> exclusiveIndexes = new HashSet<>(indexes);
+            exclusiveIndexes.removeAll(assignedIndexes);
+            assignedIndexes.addAll(exclusiveIndexes);
+            // An alias whose indexes all belong to preceding aliases has nothing left to search
+            if (!exclusiveIndexes.isEmpty()) {
+                exclusiveIndexesByAlias.put(indexAlias, exclusiveIndexes);
+            }
+        });
+        return exclusiveIndexesByAlias;
+    }
+
+    private String getIndexAlias(Map<String, Set<String>> indexesByAlias, String index) {
+        for (final Map.Entry<String, Set<String>> entry : indexesByAlias.entrySet()) {
+            if (entry.getValue().contains(index)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private void addSorts(SearchSourceBuilder source, List<String> indexAliases, List<SortOption> sortOptions) {
+        if (sortOptions == null) {
+            return;
+        }
+        for (final SortOption sortOption : sortOptions) {
+            final SortOrder order = (sortOption.getSortDirection() == SortOption.Direction.DESC) ? SortOrder.DESC : SortOrder.ASC;
+            if (SortOption.relevance().getFieldName().equals(sortOption.getFieldName())) {
+                source.sort(SortBuilders.scoreSort().order(order));
+            } else {
+                final FieldConfiguration fieldConfiguration = getCommonFieldConfiguration(indexAliases, sortOption.getFieldName());
+                final boolean text = isText(fieldConfiguration);
+                // Indexes of aliases without the field sort their hits as if the field was missing
+                source.sort(SortBuilders.fieldSort(text ? sortOption.getFieldName() + KEYWORD_SUFFIX : sortOption.getFieldName()).order(order)
+                        .unmappedType(text ? "keyword" : fieldConfiguration.getElasticsearchType().toLowerCase(Locale.ROOT)));
+            }
+        }
+    }
+
+    private Map<String, Set<String>> addFacets(SearchSourceBuilder source, Map<String, Set<String>> indexesByAlias, List<String> facetFields,
+                                               int maxFacetValues) {
+        // Aggregated field names per facet, a facet needs several aggregations if its field is a text field in some aliases only
+        final Map<String, Set<String>> facetAggregations = new LinkedHashMap<>();
+        for (final String facetField : facetFields) {
+            // Indexes per aggregated field, aggregating a text field itself would fail on the indexes where it has no keyword type
+            final Map<String, Set<String>> aggregatedFields = new LinkedHashMap<>();
+            indexesByAlias.forEach((indexAlias, indexes) -> {
+                final FieldConfiguration fieldConfiguration = getFieldConfiguration(indexAlias, facetField);
+                if (fieldConfiguration != null) {
+                    final String aggregatedField = isText(fieldConfiguration) ? facetField + KEYWORD_SUFFIX : facetField;
+                    aggregatedFields.computeIfAbsent(aggregatedField, field -> new HashSet<>()).addAll(indexes);
+                }
+            });
+            aggregatedFields.forEach((aggregatedField, indexes) -> source.aggregation(
+                    AggregationBuilders.filter(FACET_PREFIX + aggregatedField, QueryBuilders.termsQuery("_index", indexes))
+                            .subAggregation(AggregationBuilders.terms(FACET_VALUES).field(aggregatedField).size(maxFacetValues))));
+            facetAggregations.put(facetField, aggregatedFields.keySet());
+        }
+        return facetAggregations;
+    }
+
+    private Map<String, Map<String, Long>> mergeFacets(SearchResponse response, Map<String, Set<String>> facetAggregations, int maxFacetValues) {
+        final Map<String, Map<String, Long>> facets = new LinkedHashMap<>();
+        facetAggregations.forEach((facetField, aggregatedFields) -> {
+            final Map<String, Long> counts = new HashMap<>();
+            for (final String aggregatedField : aggregatedFields) {
+                final Filter filter = response.getAggregations().get(FACET_PREFIX + aggregatedField);
+                final Terms terms = filter.getAggregations().get(FACET_VALUES);
+                terms.getBuckets().forEach(bucket -> counts.merge(bucket.getKeyAsString(), bucket.getDocCount(), Long::sum));
+            }
+            final Map<String, Long> sortedCounts = new LinkedHashMap<>();
+            counts.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                    .limit(maxFacetValues)
+                    .forEach(entry -> sortedCounts.put(entry.getKey(), entry.getValue()));
+            facets.put(facetField, sortedCounts);
+        });
+        return facets;
+    }
+
+    private FieldConfiguration getCommonFieldConfiguration(List<String> indexAliases, String fieldName) {
+        FieldConfiguration common = null;
+        for (final String indexAlias : indexAliases) {
+            final FieldConfiguration fieldConfiguration = getFieldConfiguration(indexAlias, fieldName);
+            if (fieldConfiguration == null) {
+                continue;
+            } else if (common != null && !common.getElasticsearchType().equalsIgnoreCase(fieldConfiguration.getElasticsearchType())) {
+                throw new IllegalArgumentException("Sort field '" + fieldName + "' has different types in index aliases " + indexAliases + "!");
+            }
+            common = fieldConfiguration;
+        }
+        if (common == null) {
+            throw new IllegalArgumentException("Sort field '" + fieldName + "' is unknown in index aliases " + indexAliases + "!");
+        }
+        return common;
+    }
+
+    private FieldConfiguration getFieldConfiguration(String indexAlias, String fieldName) {
+        for (final FieldConfiguration fieldConfiguration : fieldConfigurationProvider.getFieldConfigurations(indexAlias)) {
+            if (fieldConfiguration.getName().equals(fieldName)) {
+                return fieldConfiguration;
+            }
+        }
+        return null;
+    }
+
+    private ExpressionQueryFactory getQueryFactory(String indexAlias) {
+        return queryFactories.computeIfAbsent(indexAlias,
+                alias -> new ExpressionQueryFactory(fieldConfigurationProvider.getFieldConfigurations(alias)));
+    }
+
+    private static boolean isText(FieldConfiguration fieldConfiguration) {
+        return "TEXT".equals(fieldConfiguration.getElasticsearchType().toUpperCase(Locale.ROOT));
+    }
+}
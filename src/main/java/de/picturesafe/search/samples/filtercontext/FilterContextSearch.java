@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.filtercontext;
+
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.RangeValueExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import de.picturesafe.search.samples.bulkindexing.BulkIndexer;
+import de.picturesafe.search.samples.query.ExpressionQueryFactory;
+import de.picturesafe.search.samples.query.QueryContextHints;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class FilterContextSearch implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilterContextSearch.class);
+
+    private static final int DOCUMENT_COUNT = 20_000;
+    private static final int BENCHMARK_SEARCH_COUNT = 200;
+    private static final String[] KEYWORDS = {"red", "green", "blue", "yellow"};
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(FilterContextSearch.class)) {
+            final FilterContextSearch filterContextSearch = ctx.getBean(FilterContextSearch.class);
+            filterContextSearch.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+            try (BulkIndexer bulkIndexer = BulkIndexer.builder(elasticsearchService, restClient, indexAlias).build()) {
+                LongStream.rangeClosed(1, DOCUMENT_COUNT).forEach(id -> bulkIndexer.add(DocumentBuilder.id(id)
+                        .put("title", "This is a test title " + id)
+                        .put("keyword", KEYWORDS[(int) (id % KEYWORDS.length)])
+                        .put("quantity", id % 1000)
+                        .build()));
+                bulkIndexer.flush();
+            }
+
+            final ExpressionQueryFactory queryFactory = new ExpressionQueryFactory(fieldConfigurationProvider.getFieldConfigurations(indexAlias));
+            final Expression quantity = new ValueExpression("quantity", ValueExpression.Comparison.GT, 50);
+            final Expression range = new RangeValueExpression("quantity", 100, 900);
+            final Expression expression = OperationExpression.and(
+                    new FulltextExpression("test title"),
+                    quantity,
+                    range,
+                    OperationExpression.or(new ValueExpression("keyword", "yellow"), new ValueExpression("keyword", "red")));
+
+            // Sorted by relevance: the numeric clauses cannot affect the ranking and are executed in filter context,
+            // the text clauses on field 'keyword' remain scored.
+            final SearchParameter byRelevance = SearchParameter.builder().pageSize(20).pageIndex(1).build();
+            final QueryBuilder filtered = queryFactory.createQuery(expression, byRelevance);
+            LOGGER.info("Query sorted by relevance:\n{}", filtered);
+
+            // Forcing all clauses into scoring context reproduces the query without filter context
+            final QueryContextHints scoringHints = new QueryContextHints().scoring(quantity).scoring(range);
+            final QueryBuilder scored = queryFactory.createQuery(expression, byRelevance, scoringHints);
+
+            // Sorted by field: no clause affects the order of the hits, so all of them are executed in filter context
+            final SearchParameter byQuantity = SearchParameter.builder().pageSize(20).pageIndex(1).sortOptions(SortOption.asc("quantity")).build();
+            LOGGER.info("Query sorted by field:\n{}", queryFactory.createQuery(expression, byQuantity));
+
+            LOGGER.info("Scored clauses: {} searches within {} ms, {} hits", BENCHMARK_SEARCH_COUNT, benchmark(indexAlias, scored), count(indexAlias, scored));
+            LOGGER.info("Filter context: {} searches within {} ms, {} hits", BENCHMARK_SEARCH_COUNT, benchmark(indexAlias, filtered),
+                    count(indexAlias, filtered));
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+
+    private long benchmark(String indexAlias, QueryBuilder query) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_SEARCH_COUNT; i++) {
+            search(indexAlias, query);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private long count(String indexAlias, QueryBuilder query) {
+        return search(indexAlias, query).getHits().getTotalHits().value;
+    }
+
+    private SearchResponse search(String indexAlias, QueryBuilder query) {
+        try {
+            return restClient.search(new SearchRequest(indexAlias).source(new SearchSourceBuilder().query(query).size(20)), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new RuntimeException("Search failed!", e);
+        }
+    }
+}
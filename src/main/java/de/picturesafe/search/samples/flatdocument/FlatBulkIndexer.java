@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.flatdocument;
+
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import java.io.IOException;
+
+/**
+ * Serializes {@link FlatDocument}s straight into bulk requests. Full batches are sent without waiting for a refresh, {@link #flush()}
+ * sends the remaining documents and waits until all changes are visible to searches.
+ */
+public class FlatBulkIndexer {
+
+    private final RestHighLevelClient restClient;
+    private final String indexAlias;
+    private final int batchSize;
+
+    private BulkRequest bulkRequest = new BulkRequest();
+    private long documentCount;
+    // Full batches sent since the last flush, they are not necessarily visible yet
+    private boolean unrefreshedBatches;
+
+    public FlatBulkIndexer(RestHighLevelClient restClient, String indexAlias, int batchSize) {
+        this.restClient = restClient;
+        this.indexAlias = indexAlias;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Adds a document to the current batch. The document is serialized immediately and may be reused by the caller afterwards.
+     *
+     * @param document Document to add
+     */
+    public void add(FlatDocument document) {
+        bulkRequest.add(document.toIndexRequest(indexAlias));
+        if (bulkRequest.numberOfActions() >= batchSize) {
+            send(WriteRequest.RefreshPolicy.NONE);
+            unrefreshedBatches = true;
+        }
+    }
+
+    /**
+     * Sends the remaining documents and waits for the refresh.
+     *
+     * @return Number of documents indexed since creation of the indexer
+     */
+    public long flush() {
+        if (unrefreshedBatches) {
+            // WAIT_UNTIL only covers the shards of the last batch, earlier batches may have been written to other shards
+            send(WriteRequest.RefreshPolicy.NONE);
+            try {
+                restClient.indices().refresh(new RefreshRequest(indexAlias), RequestOptions.DEFAULT);
+            } catch (IOException e) {
+                throw new RuntimeException("Refreshing index alias '" + indexAlias + "' failed!", e);
+            }
+            unrefreshedBatches = false;
+        } else {
+            send(WriteRequest.RefreshPolicy.WAIT_UNTIL);
+        }
+        return documentCount;
+    }
+
+    private void send(WriteRequest.RefreshPolicy refreshPolicy) {
+        if (bulkRequest.numberOfActions() == 0) {
+            return;
+        }
+        try {
+            final BulkResponse response = restClient.bulk(bulkRequest.setRefreshPolicy(refreshPolicy), RequestOptions.DEFAULT);
+            if (response.hasFailures()) {
+                throw new IllegalStateException(response.buildFailureMessage());
+            }
+            documentCount += bulkRequest.numberOfActions();
+            bulkRequest = new BulkRequest();
+        } catch (IOException e) {
+            throw new RuntimeException("Bulk indexing into index alias '" + indexAlias + "' failed!", e);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.flatdocument;
+
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Allocation-light alternative to the maps built by {@link DocumentBuilder}: values are stored in slots defined by a
+ * {@link FlatDocumentSchema}, numeric and date values without boxing. A flat document is mutable and meant to be reused: it is serialized
+ * directly into an {@link IndexRequest} and can then be refilled for the next document.
+ */
+public class FlatDocument {
+
+    private final FlatDocumentSchema schema;
+    private final long[] primitiveValues;
+    private final Object[] objectValues;
+    private final boolean[] present;
+
+    FlatDocument(FlatDocumentSchema schema) {
+        this.schema = schema;
+        this.primitiveValues = new long[schema.size()];
+        this.objectValues = new Object[schema.size()];
+        this.present = new boolean[schema.size()];
+    }
+
+    /**
+     * Clears all values and sets the ID of the next document.
+     *
+     * @param id Document ID
+     * @return This document
+     */
+    public FlatDocument id(long id) {
+        Arrays.fill(present, false);
+        Arrays.fill(objectValues, null);
+        primitiveValues[schema.idSlot()] = id;
+        present[schema.idSlot()] = true;
+        return this;
+    }
+
+    public long getId() {
+        return primitiveValues[schema.idSlot()];
+    }
+
+    public FlatDocument put(String fieldName, long value) {
+        final int slot = schema.slotOf(fieldName);
+        if (schema.slotType(slot) == FlatDocumentSchema.SlotType.OBJECT) {
+            throw new IllegalArgumentException("Field '" + fieldName + "' is not numeric!");
+        }
+        primitiveValues[slot] = value;
+        present[slot] = true;
+        return this;
+    }
+
+    public FlatDocument put(String fieldName, Date value) {
+        return (value != null) ? put(fieldName, value.getTime()) : remove(fieldName);
+    }
+
+    public FlatDocument put(String fieldName, Object value) {
+        final int slot = schema.slotOf(fieldName);
+        if (value == null) {
+            return remove(fieldName);
+        } else if (schema.slotType(slot) != FlatDocumentSchema.SlotType.OBJECT) {
+            if (value instanceof Number) {
+                return put(fieldName, ((Number) value).longValue());
+            } else if (value instanceof Date) {
+                return put(fieldName, (Date) value);
+            }
+            throw new IllegalArgumentException("Value of type " + value.getClass().getName() + " is not allowed for field '" + fieldName + "'!");
+        }
+        objectValues[slot] = value;
+        present[slot] = true;
+        return this;
+    }
+
+    public FlatDocument remove(String fieldName) {
+        final int slot = schema.slotOf(fieldName);
+        present[slot] = false;
+        objectValues[slot] = null;
+        return this;
+    }
+
+    /**
+     * Writes the document as JSON source, DATE values are written in ISO-8601 format.
+     *
+     * @param builder Target builder
+     * @return The builder
+     */
+    public XContentBuilder writeTo(XContentBuilder builder) throws IOException {
+        builder.startObject();
+        for (int slot = 0; slot < present.length; slot++) {
+            if (present[slot]) {
+                final String fieldName = schema.fieldName(slot);
+                switch (schema.slotType(slot)) {
+                    case LONG:
+                        builder.field(fieldName, primitiveValues[slot]);
+                        break;
+                    case DATE:
+                        builder.field(fieldName, DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(primitiveValues[slot])));
+                        break;
+                    default:
+                        builder.field(fieldName, objectValues[slot]);
+                }
+            }
+        }
+        return builder.endObject();
+    }
+
+    /**
+     * Serializes the document into an index request, afterwards the document may be reused.
+     *
+     * @param indexName Name or alias of the target index
+     * @return Index request
+     */
+    public IndexRequest toIndexRequest(String indexName) {
+        try {
+            return new IndexRequest(indexName).id(Long.toString(getId())).source(writeTo(XContentFactory.jsonBuilder()));
+        } catch (IOException e) {
+            throw new RuntimeException("Serializing document " + getId() + " failed!", e);
+        }
+    }
+
+    /**
+     * Converts the document into the map representation expected by the ElasticsearchService.
+     *
+     * @return Document as map
+     */
+    public Map<String, Object> toMap() {
+        final Map<String, Object> document = new HashMap<>();
+        for (int slot = 0; slot < present.length; slot++) {
+            if (present[slot]) {
+                switch (schema.slotType(slot)) {
+                    case LONG:
+                        document.put(schema.fieldName(slot), primitiveValues[slot]);
+                        break;
+                    case DATE:
+                        document.put(schema.fieldName(slot), new Date(primitiveValues[slot]));
+                        break;
+                    default:
+                        document.put(schema.fieldName(slot), objectValues[slot]);
+                }
+            }
+        }
+        return document;
+    }
+}
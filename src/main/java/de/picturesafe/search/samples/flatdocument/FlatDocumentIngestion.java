@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.flatdocument;
+
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+@Component
+@ComponentScan
+public class FlatDocumentIngestion implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FlatDocumentIngestion.class);
+
+    private static final int BENCHMARK_DOCUMENT_COUNT = 100_000;
+    private static final int DOCUMENT_COUNT = 20_000;
+    private static final long CREATED = 1577836800000L; // 2020-01-01T00:00:00Z
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(FlatDocumentIngestion.class)) {
+            final FlatDocumentIngestion flatDocumentIngestion = ctx.getBean(FlatDocumentIngestion.class);
+            flatDocumentIngestion.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+            // Field names and types are resolved once per alias
+            final FlatDocumentSchema schema = new FlatDocumentSchema(fieldConfigurationProvider.getFieldConfigurations(indexAlias));
+
+            // Benchmark: allocation per document when building and serializing an index request
+            final LongConsumer mapBased = id -> {
+                final Map<String, Object> document = DocumentBuilder.id(id).put("title", "This is a test title " + id).put("count", id)
+                        .put("created", new Date(CREATED + id)).build();
+                new IndexRequest(indexAlias).id(String.valueOf(id)).source(document);
+            };
+            final FlatDocument reusedDocument = schema.newDocument();
+            final LongConsumer flat = id -> reusedDocument.id(id).put("title", "This is a test title " + id).put("count", id)
+                    .put("created", CREATED + id).toIndexRequest(indexAlias);
+
+            // Warm up both paths before measuring
+            measureAllocatedBytes(mapBased);
+            measureAllocatedBytes(flat);
+            LOGGER.info("Map based documents: {} bytes allocated per document", measureAllocatedBytes(mapBased) / BENCHMARK_DOCUMENT_COUNT);
+            LOGGER.info("Flat documents: {} bytes allocated per document", measureAllocatedBytes(flat) / BENCHMARK_DOCUMENT_COUNT);
+
+            final FlatBulkIndexer indexer = new FlatBulkIndexer(restClient, indexAlias, 1000);
+            final FlatDocument document = schema.newDocument();
+            for (long id = 1; id <= DOCUMENT_COUNT; id++) {
+                indexer.add(document.id(id).put("title", "This is a test title " + id).put("count", id).put("created", CREATED + id));
+            }
+            LOGGER.info("Indexed {} flat documents", indexer.flush());
+
+            final SearchResult searchResult = singleIndexElasticsearchService.search(new FulltextExpression("test title"), SearchParameter.DEFAULT);
+            LOGGER.info("Index contains {} documents", searchResult.getTotalHitCount());
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+
+    private long measureAllocatedBytes(LongConsumer documentProducer) {
+        final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final long start = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (long id = 1; id <= BENCHMARK_DOCUMENT_COUNT; id++) {
+            documentProducer.accept(id);
+        }
+        return threadMXBean.getThreadAllocatedBytes(threadId) - start;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.flatdocument;
+
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Field layout of {@link FlatDocument}s: the field configurations of an index alias are resolved once to slot indexes, INTEGER, LONG and
+ * DATE fields get primitive slots.
+ */
+public class FlatDocumentSchema {
+
+    enum SlotType {
+        LONG, DATE, OBJECT
+    }
+
+    private final String[] fieldNames;
+    private final SlotType[] slotTypes;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final int idSlot;
+
+    public FlatDocumentSchema(List<? extends FieldConfiguration> fieldConfigurations) {
+        fieldNames = new String[fieldConfigurations.size()];
+        slotTypes = new SlotType[fieldConfigurations.size()];
+        for (int i = 0; i < fieldConfigurations.size(); i++) {
+            final FieldConfiguration fieldConfiguration = fieldConfigurations.get(i);
+            fieldNames[i] = fieldConfiguration.getName();
+            slotTypes[i] = slotType(fieldConfiguration.getElasticsearchType());
+            slots.put(fieldConfiguration.getName(), i);
+        }
+
+        final Integer slot = slots.get(FieldConfiguration.FIELD_NAME_ID);
+        if (slot == null || slotTypes[slot] != SlotType.LONG) {
+            throw new IllegalArgumentException("Field configurations must contain a numeric field '" + FieldConfiguration.FIELD_NAME_ID + "'!");
+        }
+        idSlot = slot;
+    }
+
+    public FlatDocument newDocument() {
+        return new FlatDocument(this);
+    }
+
+    int size() {
+        return fieldNames.length;
+    }
+
+    int idSlot() {
+        return idSlot;
+    }
+
+    String fieldName(int slot) {
+        return fieldNames[slot];
+    }
+
+    SlotType slotType(int slot) {
+        return slotTypes[slot];
+    }
+
+    int slotOf(String fieldName) {
+        final Integer slot = slots.get(fieldName);
+        if (slot == null) {
+            throw new IllegalArgumentException("Field '" + fieldName + "' is not configured!");
+        }
+        return slot;
+    }
+
+    private static SlotType slotType(String elasticsearchType) {
+        switch (elasticsearchType.toUpperCase(Locale.ROOT)) {
+            case "BYTE":
+            case "SHORT":
+            case "INTEGER":
+            case "LONG":
+                return SlotType.LONG;
+            case "DATE":
+                return SlotType.DATE;
+            default:
+                return SlotType.OBJECT;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.hitcount;
+
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.query.ExpressionQueryFactory;
+import de.picturesafe.search.samples.query.ResultPage;
+import de.picturesafe.search.samples.query.TotalHitsTracking;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Searches which do not need an exact total hit count. Counting all hits of a search prevents Elasticsearch from skipping documents that
+ * cannot make it into the requested page, so pages should be requested with capped or disabled total hit tracking wherever the UI does not
+ * show the exact count.
+ */
+public class HitCountService {
+
+    private final RestHighLevelClient restClient;
+    private final FieldConfigurationProvider fieldConfigurationProvider;
+    private final Map<String, ExpressionQueryFactory> queryFactories = new ConcurrentHashMap<>();
+
+    public HitCountService(RestHighLevelClient restClient, FieldConfigurationProvider fieldConfigurationProvider) {
+        this.restClient = restClient;
+        this.fieldConfigurationProvider = fieldConfigurationProvider;
+    }
+
+    /**
+     * Counts the documents matching an expression without fetching, scoring or sorting any of them.
+     *
+     * @param indexAlias    Index alias
+     * @param expression    Expression
+     * @return Exact number of matching documents
+     */
+    public long count(String indexAlias, Expression expression) {
+        final CountRequest countRequest = new CountRequest(indexAlias).query(getQueryFactory(indexAlias).createQuery(expression));
+        try {
+            return restClient.count(countRequest, RequestOptions.DEFAULT).getCount();
+        } catch (IOException e) {
+            throw new RuntimeException("Counting documents in index alias '" + indexAlias + "' failed!", e);
+        }
+    }
+
+    /**
+     * Checks if more documents than a threshold match an expression. Counting stops as soon as the threshold is exceeded.
+     *
+     * @param indexAlias    Index alias
+     * @param expression    Expression
+     * @param threshold     Threshold
+     * @return TRUE if more than threshold documents match
+     */
+    public boolean hasMoreThan(String indexAlias, Expression expression, int threshold) {
+        final SearchSourceBuilder source = TotalHitsTracking.upTo(threshold)
+                .applyTo(new SearchSourceBuilder().query(getQueryFactory(indexAlias).createQuery(expression)).size(0).fetchSource(false));
+        final TotalHits totalHits = search(indexAlias, source).getHits().getTotalHits();
+        return totalHits.relation == TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO || totalHits.value > threshold;
+    }
+
+    /**
+     * Searches a page of documents.
+     *
+     * @param indexAlias        Index alias
+     * @param expression        Expression
+     * @param searchParameter   Search parameter
+     * @param totalHitsTracking Tracking of the total number of hits, see {@link ResultPage#isTotalHitCountExact()}
+     * @return Result page
+     */
+    public ResultPage search(String indexAlias, Expression expression, SearchParameter searchParameter, TotalHitsTracking totalHitsTracking) {
+        final SearchSourceBuilder source = getQueryFactory(indexAlias).createSearchSource(expression, searchParameter, totalHitsTracking);
+        return ResultPage.of(search(indexAlias, source), source);
+    }
+
+    private SearchResponse search(String indexAlias, SearchSourceBuilder source) {
+        try {
+            return restClient.search(new SearchRequest(indexAlias).source(source), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new RuntimeException("Search in index alias '" + indexAlias + "' failed!", e);
+        }
+    }
+
+    private ExpressionQueryFactory getQueryFactory(String indexAlias) {
+        return queryFactories.computeIfAbsent(indexAlias,
+                alias -> new ExpressionQueryFactory(fieldConfigurationProvider.getFieldConfigurations(alias)));
+    }
+}
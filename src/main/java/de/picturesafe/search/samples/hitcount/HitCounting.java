@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.hitcount;
+
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import de.picturesafe.search.samples.bulkindexing.BulkIndexer;
+import de.picturesafe.search.samples.query.ResultPage;
+import de.picturesafe.search.samples.query.TotalHitsTracking;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class HitCounting implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HitCounting.class);
+
+    private static final int DOCUMENT_COUNT = 20_000;
+    private static final int BENCHMARK_SEARCH_COUNT = 200;
+    private static final int MAX_DISPLAYED_HIT_COUNT = 1_000;
+    private static final String[] KEYWORDS = {"red", "green", "blue", "yellow"};
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(HitCounting.class)) {
+            final HitCounting hitCounting = ctx.getBean(HitCounting.class);
+            hitCounting.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+            try (BulkIndexer bulkIndexer = BulkIndexer.builder(elasticsearchService, restClient, indexAlias).build()) {
+                LongStream.rangeClosed(1, DOCUMENT_COUNT).forEach(id -> bulkIndexer.add(DocumentBuilder.id(id)
+                        .put("title", "This is a test title " + id)
+                        .put("keyword", KEYWORDS[(int) (id % KEYWORDS.length)])
+                        .put("quantity", id % 1000)
+                        .build()));
+                bulkIndexer.flush();
+            }
+
+            final HitCountService hitCountService = new HitCountService(restClient, fieldConfigurationProvider);
+            final Expression expression = OperationExpression.and(new FulltextExpression("test title"), new ValueExpression("keyword", "red"));
+
+            // Count only: no hits are fetched, scored or sorted
+            LOGGER.info("Count API: {} documents", hitCountService.count(indexAlias, expression));
+            LOGGER.info("More than {} documents: {}", MAX_DISPLAYED_HIT_COUNT, hitCountService.hasMoreThan(indexAlias, expression, MAX_DISPLAYED_HIT_COUNT));
+
+            // Result pages showing "more than 1000 hits" do not need the exact total
+            final SearchParameter firstPage = SearchParameter.builder().pageSize(20).pageIndex(1).build();
+            final ResultPage capped = hitCountService.search(indexAlias, expression, firstPage, TotalHitsTracking.upTo(MAX_DISPLAYED_HIT_COUNT));
+            LOGGER.info("Capped tracking: {}{} hits", capped.isTotalHitCountExact() ? "" : "more than ", capped.getTotalHitCount());
+
+            for (final TotalHitsTracking totalHitsTracking
+                    : new TotalHitsTracking[] {TotalHitsTracking.EXACT, TotalHitsTracking.upTo(MAX_DISPLAYED_HIT_COUNT), TotalHitsTracking.OFF}) {
+                final long start = System.nanoTime();
+                for (int i = 0; i < BENCHMARK_SEARCH_COUNT; i++) {
+                    hitCountService.search(indexAlias, expression, firstPage, totalHitsTracking);
+                }
+                LOGGER.info("{}: {} searches within {} ms", totalHitsTracking, BENCHMARK_SEARCH_COUNT,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+}
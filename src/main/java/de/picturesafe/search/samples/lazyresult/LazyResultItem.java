@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.lazyresult;
+
+import de.picturesafe.search.elasticsearch.model.SearchResultItem;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.SearchHit;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Search result item keeping the source bytes of its hit. Attributes are parsed into values on first access only, reading the id does not
+ * touch the source at all. The high level client has already parsed the response and copied each source into a buffer of its own, so
+ * only building the attribute maps is deferred, not the parsing of the response.
+ * <p>
+ * Each call of {@link #getAttribute} for a new attribute scans the source once, skipping all other attributes. Callers reading most of
+ * the attributes should use {@link #getAttributes()}, which parses the source completely.
+ */
+public class LazyResultItem {
+
+    private final String id;
+    private final BytesReference source;
+    private final Map<String, Object> parsedAttributes = new HashMap<>();
+    private Map<String, Object> attributes;
+
+    public LazyResultItem(SearchHit hit) {
+        this.id = hit.getId();
+        this.source = hit.getSourceRef();
+    }
+
+    /**
+     * Gets the document ID as returned by Elasticsearch. It is not parsed, so documents with non-numeric IDs (e.g. not indexed via
+     * picturesafe-search) are supported as well.
+     *
+     * @return Document ID
+     */
+    public String getId() {
+        return id;
+    }
+
+    public Object getAttribute(String name) {
+        if (attributes != null) {
+            return attributes.get(name);
+        } else if (parsedAttributes.containsKey(name)) {
+            return parsedAttributes.get(name);
+        }
+        final Object value = parseAttribute(name);
+        parsedAttributes.put(name, value);
+        return value;
+    }
+
+    public Map<String, Object> getAttributes() {
+        if (attributes == null) {
+            attributes = (source != null) ? XContentHelper.convertToMap(source, false, XContentType.JSON).v1() : new HashMap<>();
+            parsedAttributes.clear();
+        }
+        return attributes;
+    }
+
+    public SearchResultItem toSearchResultItem() {
+        return new SearchResultItem(getAttributes());
+    }
+
+    private Object parseAttribute(String name) {
+        if (source == null) {
+            return null;
+        }
+
+        try (XContentParser parser = XContentHelper.createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION,
+                source, XContentType.JSON)) {
+            parser.nextToken();
+            XContentParser.Token token;
+            while ((token = parser.nextToken()) == XContentParser.Token.FIELD_NAME) {
+                final boolean match = name.equals(parser.currentName());
+                token = parser.nextToken();
+                if (match) {
+                    return readValue(parser, token);
+                }
+                parser.skipChildren();
+            }
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException("Parsing attribute '" + name + "' of document " + id + " failed!", e);
+        }
+    }
+
+    private Object readValue(XContentParser parser, XContentParser.Token token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                return parser.map();
+            case START_ARRAY:
+                return parser.list();
+            case VALUE_NULL:
+                return null;
+            default:
+                return parser.objectText();
+        }
+    }
+}
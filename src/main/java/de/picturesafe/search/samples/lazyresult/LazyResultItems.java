@@ -0,0 +1,173 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.lazyresult;
+
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.elasticsearch.model.SearchResultItem;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import de.picturesafe.search.samples.bulkindexing.BulkIndexer;
+import de.picturesafe.search.samples.query.ExpressionQueryFactory;
+import de.picturesafe.search.samples.query.ResultPage;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
+import java.util.function.ToLongFunction;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class LazyResultItems implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LazyResultItems.class);
+
+    private static final int DOCUMENT_COUNT = 5_000;
+    private static final int PAGE_SIZE = 1_000;
+    private static final int BENCHMARK_PAGE_COUNT = 20;
+    private static final String[] KEYWORDS = {"red", "green", "blue", "yellow"};
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(LazyResultItems.class)) {
+            final LazyResultItems lazyResultItems = ctx.getBean(LazyResultItems.class);
+            lazyResultItems.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+            try (BulkIndexer bulkIndexer = BulkIndexer.builder(elasticsearchService, restClient, indexAlias).build()) {
+                LongStream.rangeClosed(1, DOCUMENT_COUNT).forEach(id -> bulkIndexer.add(DocumentBuilder.id(id)
+                        .put("title", "This is a test title " + id)
+                        .put("caption", "This is a longer test caption of document " + id + " describing its content")
+                        .put("keyword", KEYWORDS[(int) (id % KEYWORDS.length)])
+                        .put("count", id % 100)
+                        .build()));
+                bulkIndexer.flush();
+            }
+
+            final ExpressionQueryFactory queryFactory = new ExpressionQueryFactory(fieldConfigurationProvider.getFieldConfigurations(indexAlias));
+            final SearchParameter searchParameter = SearchParameter.builder().pageSize(PAGE_SIZE).pageIndex(1).sortOptions(SortOption.asc("id")).build();
+            final SearchSourceBuilder source = queryFactory.createSearchSource(new FulltextExpression("test title"), searchParameter);
+
+            final ToLongFunction<SearchResponse> eagerIds = response -> {
+                long checksum = 0;
+                for (final SearchResultItem item : ResultPage.of(response, source).getSearchResultItems()) {
+                    checksum += Objects.hashCode(item.getId());
+                }
+                return checksum;
+            };
+            final ToLongFunction<SearchResponse> lazyIds = response -> {
+                long checksum = 0;
+                for (final LazyResultItem item : LazyResultPage.of(response, source).getItems()) {
+                    checksum += Objects.hashCode(item.getId());
+                }
+                return checksum;
+            };
+            final ToLongFunction<SearchResponse> eagerAttributes = response -> {
+                long checksum = 0;
+                for (final SearchResultItem item : ResultPage.of(response, source).getSearchResultItems()) {
+                    checksum += item.getAttribute("title").hashCode() + item.getAttribute("caption").hashCode()
+                            + item.getAttribute("keyword").hashCode() + ((Number) item.getAttribute("count")).longValue();
+                }
+                return checksum;
+            };
+            final ToLongFunction<SearchResponse> lazyAttributes = response -> {
+                long checksum = 0;
+                for (final LazyResultItem item : LazyResultPage.of(response, source).getItems()) {
+                    checksum += item.getAttribute("title").hashCode() + item.getAttribute("caption").hashCode()
+                            + item.getAttribute("keyword").hashCode() + ((Number) item.getAttribute("count")).longValue();
+                }
+                return checksum;
+            };
+
+            // Warm up all paths before measuring
+            benchmark(indexAlias, source, eagerIds);
+            benchmark(indexAlias, source, lazyIds);
+            benchmark(indexAlias, source, eagerAttributes);
+            benchmark(indexAlias, source, lazyAttributes);
+            LOGGER.info("Id only, eager items: {}", benchmark(indexAlias, source, eagerIds));
+            LOGGER.info("Id only, lazy items: {}", benchmark(indexAlias, source, lazyIds));
+            LOGGER.info("Four attributes, eager items: {}", benchmark(indexAlias, source, eagerAttributes));
+            LOGGER.info("Four attributes, lazy items: {}", benchmark(indexAlias, source, lazyAttributes));
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+
+    // Measures reading the hits of a parsed response only, every page is read from a fresh response since hits cache their parsed source.
+    // Parsing the response and copying the sources of the hits is done by the client before and is not included.
+    private String benchmark(String indexAlias, SearchSourceBuilder source, ToLongFunction<SearchResponse> reader) {
+        final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        long allocatedBytes = 0;
+        long nanos = 0;
+        for (int i = 0; i < BENCHMARK_PAGE_COUNT; i++) {
+            final SearchResponse response = search(indexAlias, source);
+            final long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            final long start = System.nanoTime();
+            reader.applyAsLong(response);
+            nanos += System.nanoTime() - start;
+            allocatedBytes += threadMXBean.getThreadAllocatedBytes(threadId) - startBytes;
+        }
+        return String.format("%d us and %d KB allocated per page of %d hits", nanos / 1000 / BENCHMARK_PAGE_COUNT,
+                allocatedBytes / 1024 / BENCHMARK_PAGE_COUNT, PAGE_SIZE);
+    }
+
+    private SearchResponse search(String indexAlias, SearchSourceBuilder source) {
+        try {
+            return restClient.search(new SearchRequest(indexAlias).source(source), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new RuntimeException("Search failed!", e);
+        }
+    }
+}
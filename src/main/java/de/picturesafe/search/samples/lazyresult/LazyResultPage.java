@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.lazyresult;
+
+import de.picturesafe.search.samples.query.ResultPage;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Page of {@link LazyResultItem}s, the lazy counterpart of {@link ResultPage}.
+ */
+public class LazyResultPage {
+
+    private final List<LazyResultItem> items;
+    private final long totalHitCount;
+    private final int pageIndex;
+    private final int pageSize;
+
+    LazyResultPage(List<LazyResultItem> items, long totalHitCount, int pageIndex, int pageSize) {
+        this.items = items;
+        this.totalHitCount = totalHitCount;
+        this.pageIndex = pageIndex;
+        this.pageSize = pageSize;
+    }
+
+    public static LazyResultPage of(SearchResponse response, SearchSourceBuilder source) {
+        final SearchHit[] hits = response.getHits().getHits();
+        final List<LazyResultItem> items = new ArrayList<>(hits.length);
+        for (final SearchHit hit : hits) {
+            items.add(new LazyResultItem(hit));
+        }
+        final TotalHits totalHits = response.getHits().getTotalHits();
+        final long totalHitCount = (totalHits != null) ? totalHits.value : source.from() + hits.length;
+        return new LazyResultPage(items, totalHitCount, ResultPage.getPageIndex(source), source.size());
+    }
+
+    public List<LazyResultItem> getItems() {
+        return items;
+    }
+
+    public long getTotalHitCount() {
+        return totalHitCount;
+    }
+
+    public int getPageIndex() {
+        return pageIndex;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.multisearch;
+
+import de.picturesafe.search.samples.query.ResultPage;
+
+/**
+ * Result of one entry of a {@link SearchBatch}: either a result page or the failure of the entry.
+ */
+public class BatchSearchResult {
+
+    private final ResultPage resultPage;
+    private final Exception failure;
+
+    private BatchSearchResult(ResultPage resultPage, Exception failure) {
+        this.resultPage = resultPage;
+        this.failure = failure;
+    }
+
+    static BatchSearchResult success(ResultPage resultPage) {
+        return new BatchSearchResult(resultPage, null);
+    }
+
+    static BatchSearchResult failure(Exception failure) {
+        return new BatchSearchResult(null, failure);
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Gets the result page of the entry.
+     *
+     * @return Result page
+     * @throws RuntimeException if the entry failed
+     */
+    public ResultPage getResultPage() {
+        if (failure != null) {
+            throw new RuntimeException("Search failed!", failure);
+        }
+        return resultPage;
+    }
+
+    public Exception getFailure() {
+        return failure;
+    }
+}
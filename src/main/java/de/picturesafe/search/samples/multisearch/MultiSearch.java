@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.multisearch;
+
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.RangeValueExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import de.picturesafe.search.samples.bulkindexing.BulkIndexer;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class MultiSearch implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultiSearch.class);
+
+    private static final int DOCUMENT_COUNT = 10_000;
+    private static final int BENCHMARK_PAGE_COUNT = 100;
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(MultiSearch.class)) {
+            final MultiSearch multiSearch = ctx.getBean(MultiSearch.class);
+            multiSearch.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+            try (BulkIndexer bulkIndexer = BulkIndexer.builder(elasticsearchService, restClient, indexAlias).build()) {
+                LongStream.rangeClosed(1, DOCUMENT_COUNT).forEach(id -> bulkIndexer.add(DocumentBuilder.id(id)
+                        .put("title", "This is a test title " + id)
+                        .put("count", id % 100)
+                        .build()));
+                bulkIndexer.flush();
+            }
+
+            // Searches of one result page: main hits, counts per tab and a box of related documents
+            final SearchParameter mainHits = SearchParameter.builder().pageSize(20).pageIndex(1).build();
+            final SearchParameter count = SearchParameter.builder().pageSize(1).pageIndex(1).build();
+            final SearchParameter related = SearchParameter.builder().pageSize(5).pageIndex(1).sortOptions(SortOption.desc("count")).build();
+            final SearchBatch batch = new SearchBatch()
+                    .add(indexAlias, new FulltextExpression("test title"), mainHits)
+                    .add(indexAlias, new RangeValueExpression("count", 0, 24), count)
+                    .add(indexAlias, new RangeValueExpression("count", 25, 49), count)
+                    .add(indexAlias, new RangeValueExpression("count", 50, 99), count)
+                    .add(indexAlias, OperationExpression.and(new FulltextExpression("title"), new ValueExpression("count", 42)), related)
+                    // Fails without affecting the other searches
+                    .add("unknown-alias", new FulltextExpression("test title"), mainHits);
+
+            final MultiSearchService multiSearchService = new MultiSearchService(restClient, fieldConfigurationProvider);
+            final List<BatchSearchResult> results = multiSearchService.search(batch);
+            for (int i = 0; i < results.size(); i++) {
+                final BatchSearchResult result = results.get(i);
+                if (result.isFailed()) {
+                    LOGGER.info("Search {} failed: {}", i, result.getFailure().getMessage());
+                } else {
+                    LOGGER.info("Search {} found {} documents", i, result.getResultPage().getTotalHitCount());
+                }
+            }
+
+            long start = System.nanoTime();
+            for (int page = 0; page < BENCHMARK_PAGE_COUNT; page++) {
+                batch.getEntries().stream().filter(entry -> entry.getIndexAlias().equals(indexAlias))
+                        .forEach(entry -> singleIndexElasticsearchService.search(entry.getExpression(), entry.getSearchParameter()));
+            }
+            LOGGER.info("One round trip per search: {} result pages within {} ms", BENCHMARK_PAGE_COUNT,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            start = System.nanoTime();
+            for (int page = 0; page < BENCHMARK_PAGE_COUNT; page++) {
+                multiSearchService.search(batch);
+            }
+            LOGGER.info("One round trip per result page: {} result pages within {} ms", BENCHMARK_PAGE_COUNT,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.multisearch;
+
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.samples.query.ExpressionQueryFactory;
+import de.picturesafe.search.samples.query.ResultPage;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sends the searches of a {@link SearchBatch} as one multi search request, so the latency of a batch is roughly the latency of its
+ * slowest search instead of the sum of all round trips. Failures are reported per entry, one failing search does not fail the batch.
+ * Searches that failed on some shards or timed out fail their entry instead of returning partial results.
+ */
+public class MultiSearchService {
+
+    private final RestHighLevelClient restClient;
+    private final FieldConfigurationProvider fieldConfigurationProvider;
+    private final Map<String, ExpressionQueryFactory> queryFactories = new ConcurrentHashMap<>();
+    private int maxConcurrentSearches;
+
+    public MultiSearchService(RestHighLevelClient restClient, FieldConfigurationProvider fieldConfigurationProvider) {
+        this.restClient = restClient;
+        this.fieldConfigurationProvider = fieldConfigurationProvider;
+    }
+
+    // Limits the searches of a batch executed in parallel on the cluster, 0 uses the default of Elasticsearch.
+    public MultiSearchService maxConcurrentSearches(int maxConcurrentSearches) {
+        this.maxConcurrentSearches = maxConcurrentSearches;
+        return this;
+    }
+
+    /**
+     * Executes the searches of a batch.
+     *
+     * @param batch Search batch
+     * @return Results in the order of the batch entries
+     */
+    public List<BatchSearchResult> search(SearchBatch batch) {
+        final List<SearchBatch.Entry> entries = batch.getEntries();
+        final BatchSearchResult[] results = new BatchSearchResult[entries.size()];
+        final SearchSourceBuilder[] sources = new SearchSourceBuilder[entries.size()];
+        // Positions of the requests of the multi search request within the batch
+        final List<Integer> requestPositions = new ArrayList<>(entries.size());
+
+        final MultiSearchRequest request = new MultiSearchRequest();
+        if (maxConcurrentSearches > 0) {
+            request.maxConcurrentSearchRequests(maxConcurrentSearches);
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            final SearchBatch.Entry entry = entries.get(i);
+            try {
+                sources[i] = getQueryFactory(entry.getIndexAlias()).createSearchSource(entry.getExpression(), entry.getSearchParameter());
+                request.add(new SearchRequest(entry.getIndexAlias()).source(sources[i]));
+                requestPositions.add(i);
+            } catch (RuntimeException e) {
+                // Entries which cannot be translated fail without affecting the others
+                results[i] = BatchSearchResult.failure(e);
+            }
+        }
+
+        if (!requestPositions.isEmpty()) {
+            final MultiSearchResponse response;
+            try {
+                response = restClient.msearch(request, RequestOptions.DEFAULT);
+            } catch (IOException e) {
+                throw new RuntimeException("Multi search of " + entries.size() + " searches failed!", e);
+            }
+
+            final MultiSearchResponse.Item[] items = response.getResponses();
+            for (int i = 0; i < items.length; i++) {
+                final int position = requestPositions.get(i);
+                if (items[i].isFailure()) {
+                    results[position] = BatchSearchResult.failure(items[i].getFailure());
+                } else {
+                    // A partial or unmappable result fails its own entry only
+                    try {
+                        checkComplete(items[i].getResponse(), entries.get(position).getIndexAlias());
+                        results[position] = BatchSearchResult.success(ResultPage.of(items[i].getResponse(), sources[position]));
+                    } catch (RuntimeException e) {
+                        results[position] = BatchSearchResult.failure(e);
+                    }
+                }
+            }
+        }
+
+        return Arrays.asList(results);
+    }
+
+    private static void checkComplete(SearchResponse response, String indexAlias) {
+        final ShardSearchFailure[] shardFailures = response.getShardFailures();
+        if (shardFailures.length > 0) {
+            throw new IllegalStateException("Search in index alias '" + indexAlias + "' failed on " + shardFailures.length + " shards: "
+                    + Arrays.toString(shardFailures));
+        }
+        if (response.isTimedOut()) {
+            throw new IllegalStateException("Search in index alias '" + indexAlias + "' timed out!");
+        }
+    }
+
+    private ExpressionQueryFactory getQueryFactory(String indexAlias) {
+        return queryFactories.computeIfAbsent(indexAlias,
+                alias -> new ExpressionQueryFactory(fieldConfigurationProvider.getFieldConfigurations(alias)));
+    }
+}
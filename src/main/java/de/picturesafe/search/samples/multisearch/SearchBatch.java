@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.multisearch;
+
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.parameter.SearchParameter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Independent searches sent to Elasticsearch in one round trip by the {@link MultiSearchService}.
+ */
+public class SearchBatch {
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    public SearchBatch add(String indexAlias, Expression expression, SearchParameter searchParameter) {
+        entries.add(new Entry(indexAlias, expression, searchParameter));
+        return this;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public static class Entry {
+
+        private final String indexAlias;
+        private final Expression expression;
+        private final SearchParameter searchParameter;
+
+        Entry(String indexAlias, Expression expression, SearchParameter searchParameter) {
+            this.indexAlias = indexAlias;
+            this.expression = expression;
+            this.searchParameter = searchParameter;
+        }
+
+        public String getIndexAlias() {
+            return indexAlias;
+        }
+
+        public Expression getExpression() {
+            return expression;
+        }
+
+        public SearchParameter getSearchParameter() {
+            return searchParameter;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{indexAlias='" + indexAlias + "', expression=" + expression + ", searchParameter=" + searchParameter + "}";
+        }
+    }
+}
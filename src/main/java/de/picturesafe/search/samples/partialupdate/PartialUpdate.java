@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.partialupdate;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Changes of single fields of an existing document: new field values and increments of numeric fields.
+ */
+public class PartialUpdate {
+
+    private final long id;
+    private final Map<String, Object> values = new LinkedHashMap<>();
+    private final Map<String, Number> increments = new LinkedHashMap<>();
+
+    private PartialUpdate(long id) {
+        this.id = id;
+    }
+
+    public static PartialUpdate id(long id) {
+        return new PartialUpdate(id);
+    }
+
+    public PartialUpdate put(String fieldName, Object value) {
+        values.put(fieldName, value);
+        return this;
+    }
+
+    public PartialUpdate increment(String fieldName, Number delta) {
+        increments.put(fieldName, delta);
+        return this;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Map<String, Object> getValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    public Map<String, Number> getIncrements() {
+        return Collections.unmodifiableMap(increments);
+    }
+
+    @Override
+    public String toString() {
+        return "PartialUpdate{id=" + id + ", values=" + values + ", increments=" + increments + "}";
+    }
+}
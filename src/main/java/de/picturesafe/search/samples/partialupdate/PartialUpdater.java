@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.partialupdate;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sends only the changed fields of documents as bulk update requests. Field values and increments are validated against the field
+ * configurations of the index alias, increments are applied on the cluster by a painless script.
+ */
+public class PartialUpdater {
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int RETRY_ON_CONFLICT = 3;
+
+    private final RestHighLevelClient restClient;
+    private final String indexAlias;
+    private final Map<String, String> fieldTypes = new HashMap<>();
+    // Script sources only depend on the number of increments, so the cluster compiles and caches each of them only once
+    private final Map<Integer, String> scriptSources = new ConcurrentHashMap<>();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    public PartialUpdater(RestHighLevelClient restClient, String indexAlias, List<? extends FieldConfiguration> fieldConfigurations) {
+        this.restClient = restClient;
+        this.indexAlias = indexAlias;
+        for (final FieldConfiguration fieldConfiguration : fieldConfigurations) {
+            fieldTypes.put(fieldConfiguration.getName(), fieldConfiguration.getElasticsearchType().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public PartialUpdater batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public void updateInIndex(DataChangeProcessingMode dataChangeProcessingMode, PartialUpdate update) {
+        updateInIndex(dataChangeProcessingMode, Collections.singletonList(update));
+    }
+
+    /**
+     * Applies partial updates in bulk requests.
+     *
+     * @param dataChangeProcessingMode  BLOCKING waits until the changes are visible to searches
+     * @param updates                   Updates to apply
+     * @return Number of updated documents
+     */
+    public long updateInIndex(DataChangeProcessingMode dataChangeProcessingMode, Collection<PartialUpdate> updates) {
+        updates.forEach(this::validate);
+
+        long updateCount = 0;
+        BulkRequest bulkRequest = new BulkRequest();
+        int remaining = updates.size();
+        for (final PartialUpdate update : updates) {
+            bulkRequest.add(toUpdateRequest(update));
+            remaining--;
+            if (bulkRequest.numberOfActions() >= batchSize || remaining == 0) {
+                bulkRequest.setRefreshPolicy((remaining == 0 && dataChangeProcessingMode == DataChangeProcessingMode.BLOCKING)
+                        ? WriteRequest.RefreshPolicy.WAIT_UNTIL : WriteRequest.RefreshPolicy.NONE);
+                send(bulkRequest);
+                updateCount += bulkRequest.numberOfActions();
+                bulkRequest = new BulkRequest();
+            }
+        }
+        return updateCount;
+    }
+
+    private UpdateRequest toUpdateRequest(PartialUpdate update) {
+        final UpdateRequest request = new UpdateRequest(indexAlias, Long.toString(update.getId())).retryOnConflict(RETRY_ON_CONFLICT);
+        if (update.getIncrements().isEmpty()) {
+            return request.doc(update.getValues());
+        }
+
+        final Map<String, Object> params = new HashMap<>();
+        int i = 0;
+        for (final Map.Entry<String, Number> increment : update.getIncrements().entrySet()) {
+            params.put("f" + i, increment.getKey());
+            params.put("d" + i, increment.getValue());
+            i++;
+        }
+        params.put("values", update.getValues());
+        final String source = scriptSources.computeIfAbsent(update.getIncrements().size(), PartialUpdater::createScriptSource);
+        return request.script(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, source, params));
+    }
+
+    private static String createScriptSource(int incrementCount) {
+        final StringBuilder source = new StringBuilder("ctx._source.putAll(params.values);");
+        for (int i = 0; i < incrementCount; i++) {
+            source.append(" if (ctx._source[params.f").append(i).append("] == null) { ctx._source[params.f").append(i).append("] = params.d")
+                    .append(i).append(" } else { ctx._source[params.f").append(i).append("] += params.d").append(i).append(" }");
+        }
+        return source.toString();
+    }
+
+    private void validate(PartialUpdate update) {
+        if (update.getValues().isEmpty() && update.getIncrements().isEmpty()) {
+            throw new IllegalArgumentException("Update of document " + update.getId() + " does not contain any changes!");
+        }
+        update.getValues().forEach((fieldName, value) -> {
+            final String type = getUpdatableFieldType(fieldName);
+            if (value != null && isNumeric(type) && !(value instanceof Number)) {
+                throw new IllegalArgumentException("Value '" + value + "' of field '" + fieldName + "' is not numeric!");
+            } else if (value != null && type.equals("DATE") && !(value instanceof Date)) {
+                throw new IllegalArgumentException("Value '" + value + "' of field '" + fieldName + "' is not a date!");
+            }
+        });
+        update.getIncrements().forEach((fieldName, delta) -> {
+            if (!isNumeric(getUpdatableFieldType(fieldName))) {
+                throw new IllegalArgumentException("Field '" + fieldName + "' is not numeric and cannot be incremented!");
+            } else if (update.getValues().containsKey(fieldName)) {
+                throw new IllegalArgumentException("Field '" + fieldName + "' must not be set and incremented in the same update!");
+            }
+        });
+    }
+
+    private String getUpdatableFieldType(String fieldName) {
+        if (fieldName.equals(FieldConfiguration.FIELD_NAME_ID) || fieldName.equals(FieldConfiguration.FIELD_NAME_FULLTEXT)) {
+            throw new IllegalArgumentException("Field '" + fieldName + "' cannot be updated!");
+        }
+        final String type = fieldTypes.get(fieldName);
+        if (type == null) {
+            throw new IllegalArgumentException("Field '" + fieldName + "' is not configured for index alias '" + indexAlias + "'!");
+        }
+        return type;
+    }
+
+    private boolean isNumeric(String type) {
+        switch (type) {
+            case "BYTE":
+            case "SHORT":
+            case "INTEGER":
+            case "LONG":
+            case "FLOAT":
+            case "DOUBLE":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void send(BulkRequest bulkRequest) {
+        try {
+            final BulkResponse response = restClient.bulk(bulkRequest, RequestOptions.DEFAULT);
+            if (response.hasFailures()) {
+                throw new IllegalStateException(response.buildFailureMessage());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Updating documents in index alias '" + indexAlias + "' failed!", e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.partialupdate;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+import de.picturesafe.search.elasticsearch.model.SearchResultItem;
+import de.picturesafe.search.expression.InExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class PartialUpdates implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartialUpdates.class);
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(PartialUpdates.class)) {
+            final PartialUpdates partialUpdates = ctx.getBean(PartialUpdates.class);
+            partialUpdates.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            singleIndexElasticsearchService.addToIndex(DataChangeProcessingMode.BLOCKING, Arrays.asList(
+                    DocumentBuilder.id(1).put("user", "jane").put("tweet", "This is a test tweet").put("likes", 10).build(),
+                    DocumentBuilder.id(2).put("user", "john").put("tweet", "This is another test tweet").put("likes", 20).build(),
+                    DocumentBuilder.id(3).put("user", "jane").put("tweet", "This is one more test tweet").put("likes", 30).build()
+            ));
+
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+            final PartialUpdater partialUpdater = new PartialUpdater(restClient, indexAlias, fieldConfigurationProvider.getFieldConfigurations(indexAlias));
+
+            // High frequency counter updates: only the increments are sent, they are applied by a script on the cluster
+            final List<PartialUpdate> likes = LongStream.rangeClosed(1, 300)
+                    .mapToObj(i -> PartialUpdate.id(i % 3 + 1).increment("likes", 1))
+                    .collect(Collectors.toList());
+            partialUpdater.updateInIndex(DataChangeProcessingMode.BACKGROUND, likes);
+
+            // Changing a single field does not require the whole document
+            partialUpdater.updateInIndex(DataChangeProcessingMode.BLOCKING, PartialUpdate.id(2).put("tweet", "This is an edited test tweet"));
+
+            final SearchResult searchResult = singleIndexElasticsearchService.search(new InExpression("id", 1, 2, 3), SearchParameter.DEFAULT);
+            for (SearchResultItem searchResultItem : searchResult.getSearchResultItems()) {
+                LOGGER.info("Id = {}, user = {}, tweet = {}, likes = {}", searchResultItem.getId(), searchResultItem.getAttribute("user"),
+                        searchResultItem.getAttribute("tweet"), searchResultItem.getAttribute("likes"));
+            }
+
+            try {
+                partialUpdater.updateInIndex(DataChangeProcessingMode.BLOCKING, PartialUpdate.id(1).increment("user", 1));
+            } catch (IllegalArgumentException e) {
+                LOGGER.info("Invalid update rejected: {}", e.getMessage());
+            }
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+}
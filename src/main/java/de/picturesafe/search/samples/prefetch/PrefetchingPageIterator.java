@@ -0,0 +1,231 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.prefetch;
+
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.searchafter.CursorPage;
+import de.picturesafe.search.samples.searchafter.CursorSearchService;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Iterates over the pages of a search while requesting the following pages in the background, so sequential consumers are limited by
+ * their processing speed rather than by the latency of the searches. Up to <code>prefetchDepth</code> pages are buffered ahead of the
+ * consumer. Iterators have to be closed if they are not consumed completely, closing cancels the pending requests.
+ *
+ * @param <P> Type of the pages
+ */
+public class PrefetchingPageIterator<P> implements Iterator<P>, AutoCloseable {
+
+    private final UnaryOperator<P> nextPageLoader;
+    private final Predicate<P> hasNextPage;
+    private final BlockingQueue<Optional<P>> pages;
+    private final ExecutorService executorService;
+    private final boolean ownExecutorService;
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    private final Future<?> prefetcher;
+
+    private volatile boolean cancelled;
+    private Optional<P> nextPage;
+    private boolean exhausted;
+    private long waitNanos;
+
+    /**
+     * Creates an iterator using its own background thread.
+     *
+     * @param nextPageLoader    Loads the page following the given one, NULL requests the first page
+     * @param hasNextPage       Tests if a page is followed by another one
+     * @param prefetchDepth     Maximum number of pages buffered ahead of the consumer
+     */
+    public PrefetchingPageIterator(UnaryOperator<P> nextPageLoader, Predicate<P> hasNextPage, int prefetchDepth) {
+        this(nextPageLoader, hasNextPage, prefetchDepth, Executors.newSingleThreadExecutor(), true);
+    }
+
+    /**
+     * Creates an iterator using a shared executor, which is not shut down when the iterator is closed.
+     *
+     * @param nextPageLoader    Loads the page following the given one, NULL requests the first page
+     * @param hasNextPage       Tests if a page is followed by another one
+     * @param prefetchDepth     Maximum number of pages buffered ahead of the consumer
+     * @param executorService   Executor running the background requests
+     */
+    public PrefetchingPageIterator(UnaryOperator<P> nextPageLoader, Predicate<P> hasNextPage, int prefetchDepth,
+                                   ExecutorService executorService) {
+        this(nextPageLoader, hasNextPage, prefetchDepth, executorService, false);
+    }
+
+    private PrefetchingPageIterator(UnaryOperator<P> nextPageLoader, Predicate<P> hasNextPage, int prefetchDepth,
+                                    ExecutorService executorService, boolean ownExecutorService) {
+        this.nextPageLoader = nextPageLoader;
+        this.hasNextPage = hasNextPage;
+        this.pages = new ArrayBlockingQueue<>(prefetchDepth);
+        this.executorService = executorService;
+        this.ownExecutorService = ownExecutorService;
+        this.prefetcher = executorService.submit(this::prefetch);
+    }
+
+    /**
+     * Iterates over the pages of a search with page index and page size.
+     *
+     * @param searchService             Search service
+     * @param expression                Expression
+     * @param searchParameterFactory    Creates the search parameter for a page index starting with 1
+     * @param prefetchDepth             Maximum number of pages buffered ahead of the consumer
+     * @return Page iterator
+     */
+    public static PrefetchingPageIterator<SearchResult> searchResults(SingleIndexElasticsearchService searchService, Expression expression,
+                                                                      IntFunction<SearchParameter> searchParameterFactory, int prefetchDepth) {
+        return new PrefetchingPageIterator<>(
+                previous -> searchService.search(expression, searchParameterFactory.apply((previous != null) ? previous.getPageIndex() + 1 : 1)),
+                page -> page.getPageIndex() < page.getPageCount(),
+                prefetchDepth);
+    }
+
+    /**
+     * Iterates over the search_after windows of a cursor based search. Each window depends on the cursor of the previous one, so the
+     * windows are requested one after another, but ahead of the consumer.
+     *
+     * @param searchService     Cursor search service
+     * @param expression        Expression
+     * @param searchParameter   Search parameter defining page size and sort options
+     * @param prefetchDepth     Maximum number of pages buffered ahead of the consumer
+     * @return Page iterator
+     */
+    public static PrefetchingPageIterator<CursorPage> cursorPages(CursorSearchService searchService, Expression expression,
+                                                                  SearchParameter searchParameter, int prefetchDepth) {
+        return new PrefetchingPageIterator<>(
+                previous -> searchService.search(expression, searchParameter, (previous != null) ? previous.getNextCursor() : null),
+                CursorPage::hasNext,
+                prefetchDepth);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextPage == null && !exhausted) {
+            nextPage = take();
+            exhausted = !nextPage.isPresent();
+        }
+        if (exhausted && failure.get() != null) {
+            throw failure.get();
+        }
+        return !exhausted;
+    }
+
+    @Override
+    public P next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final P page = nextPage.get();
+        nextPage = null;
+        return page;
+    }
+
+    /**
+     * Gets the time the consumer has been waiting for pages, it approaches zero if the pages are prefetched fast enough.
+     *
+     * @return Waiting time in milliseconds
+     */
+    public long getWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+    }
+
+    /**
+     * Cancels the pending requests and releases the buffered pages. May be called from another thread, a consumer waiting for the next
+     * page is released and reaches the end of the pages.
+     */
+    public void cancel() {
+        cancelled = true;
+        prefetcher.cancel(true);
+        pages.clear();
+        // The interrupted prefetcher never puts the end marker. If a page put concurrently occupies the queue, the waiting consumer
+        // receives that page instead and sees the cancellation on its next call.
+        pages.offer(Optional.empty());
+        if (ownExecutorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Override
+    public void close() {
+        cancel();
+    }
+
+    private void prefetch() {
+        try {
+            P page = null;
+            do {
+                page = nextPageLoader.apply(page);
+                // Blocks while prefetchDepth pages are waiting for the consumer
+                pages.put(Optional.of(page));
+            } while (!cancelled && hasNextPage.test(page));
+            pages.put(Optional.empty());
+        } catch (InterruptedException e) {
+            // Iterator has been cancelled
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // Failures of page loads aborted by cancel() are of no interest to the consumer
+            if (!cancelled) {
+                failure.set(e);
+            }
+            putEndOfPages();
+        } finally {
+            if (ownExecutorService) {
+                executorService.shutdown();
+            }
+        }
+    }
+
+    private void putEndOfPages() {
+        try {
+            // The consumer drains the buffered pages before it reaches the end
+            pages.put(Optional.empty());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Optional<P> take() {
+        if (cancelled) {
+            return Optional.empty();
+        }
+        final long start = System.nanoTime();
+        try {
+            return pages.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Waiting for the next page has been interrupted!", e);
+        } finally {
+            waitNanos += System.nanoTime() - start;
+        }
+    }
+}
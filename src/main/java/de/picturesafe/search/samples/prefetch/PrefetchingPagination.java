@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.prefetch;
+
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import de.picturesafe.search.samples.bulkindexing.BulkIndexer;
+import de.picturesafe.search.samples.searchafter.CursorPage;
+import de.picturesafe.search.samples.searchafter.CursorSearchService;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class PrefetchingPagination implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrefetchingPagination.class);
+
+    private static final int DOCUMENT_COUNT = 5000;
+    private static final int PAGE_SIZE = 100;
+    private static final int PREFETCH_DEPTH = 2;
+    private static final long PROCESSING_MILLIS_PER_PAGE = 20;
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(PrefetchingPagination.class)) {
+            final PrefetchingPagination prefetchingPagination = ctx.getBean(PrefetchingPagination.class);
+            prefetchingPagination.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+            try (BulkIndexer bulkIndexer = BulkIndexer.builder(elasticsearchService, restClient, indexAlias).build()) {
+                LongStream.rangeClosed(1, DOCUMENT_COUNT).forEach(id -> bulkIndexer.add(DocumentBuilder.id(id)
+                        .put("title", "This is a test title " + id)
+                        .build()));
+                bulkIndexer.flush();
+            }
+            final Expression expression = new FulltextExpression("test title");
+
+            // Sequential paging as in the pagination sample: every page is requested after the previous one has been processed
+            long start = System.nanoTime();
+            int pageIndex = 1;
+            SearchResult searchResult = singleIndexElasticsearchService.search(expression, createSearchParameter(pageIndex));
+            process(searchResult.getResultCount());
+            while (pageIndex++ < searchResult.getPageCount()) {
+                searchResult = singleIndexElasticsearchService.search(expression, createSearchParameter(pageIndex));
+                process(searchResult.getResultCount());
+            }
+            LOGGER.info("Sequential paging: {} pages within {} ms", searchResult.getPageCount(), millisSince(start));
+
+            // The following pages are requested while the current one is processed
+            start = System.nanoTime();
+            try (PrefetchingPageIterator<SearchResult> pages = PrefetchingPageIterator.searchResults(singleIndexElasticsearchService, expression,
+                    this::createSearchParameter, PREFETCH_DEPTH)) {
+                while (pages.hasNext()) {
+                    process(pages.next().getResultCount());
+                }
+                LOGGER.info("Prefetched paging: {} pages within {} ms, waited {} ms for pages", searchResult.getPageCount(), millisSince(start),
+                        pages.getWaitMillis());
+            }
+
+            // search_after windows depend on each other, but are requested ahead of the consumer as well
+            final CursorSearchService cursorSearchService
+                    = new CursorSearchService(restClient, indexAlias, fieldConfigurationProvider.getFieldConfigurations(indexAlias));
+            start = System.nanoTime();
+            int pageCount = 0;
+            try (PrefetchingPageIterator<CursorPage> pages
+                         = PrefetchingPageIterator.cursorPages(cursorSearchService, expression, createSearchParameter(1), PREFETCH_DEPTH)) {
+                while (pages.hasNext()) {
+                    process(pages.next().getDocuments().size());
+                    pageCount++;
+                }
+                LOGGER.info("Prefetched cursor paging: {} pages within {} ms, waited {} ms for pages", pageCount, millisSince(start),
+                        pages.getWaitMillis());
+            }
+
+            // Consumers stopping early cancel the pending requests by closing the iterator
+            try (PrefetchingPageIterator<SearchResult> pages = PrefetchingPageIterator.searchResults(singleIndexElasticsearchService, expression,
+                    this::createSearchParameter, PREFETCH_DEPTH)) {
+                LOGGER.info("First page only: {} hits", pages.next().getResultCount());
+            }
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+
+    private SearchParameter createSearchParameter(int pageIndex) {
+        return SearchParameter.builder().pageSize(PAGE_SIZE).pageIndex(pageIndex).sortOptions(SortOption.asc("id")).build();
+    }
+
+    private void process(long hitCount) {
+        // Simulates processing the hits of a page, e.g. rendering or writing them
+        try {
+            Thread.sleep(PROCESSING_MILLIS_PER_PAGE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Processing " + hitCount + " hits has been interrupted!", e);
+        }
+    }
+
+    private long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.projection;
+
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.elasticsearch.model.SearchResultItem;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import de.picturesafe.search.samples.bulkindexing.BulkIndexer;
+import de.picturesafe.search.samples.query.ExpressionQueryFactory;
+import de.picturesafe.search.samples.query.ResultPage;
+import de.picturesafe.search.samples.query.SourceFilter;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class ProjectedSearch implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProjectedSearch.class);
+
+    private static final int DOCUMENT_COUNT = 2_000;
+    private static final int PAGE_SIZE = 100;
+    private static final String LARGE_TEXT = IntStream.range(0, 200).mapToObj(i -> "lorem ipsum " + i).collect(Collectors.joining(" "));
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(ProjectedSearch.class)) {
+            final ProjectedSearch projectedSearch = ctx.getBean(ProjectedSearch.class);
+            projectedSearch.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+            try (BulkIndexer bulkIndexer = BulkIndexer.builder(elasticsearchService, restClient, indexAlias).build()) {
+                LongStream.rangeClosed(1, DOCUMENT_COUNT).forEach(id -> bulkIndexer.add(DocumentBuilder.id(id)
+                        .put("title", "This is a test title " + id)
+                        .put("caption", "Caption " + id + " " + LARGE_TEXT)
+                        .put("metadata", LARGE_TEXT + " " + LARGE_TEXT)
+                        .put("article", Collections.singletonList(DocumentBuilder.withoutId()
+                                .put("title", "Article title " + id)
+                                .put("caption", LARGE_TEXT).build()))
+                        .build()));
+                bulkIndexer.flush();
+            }
+
+            final List<? extends FieldConfiguration> fieldConfigurations = fieldConfigurationProvider.getFieldConfigurations(indexAlias);
+            final ExpressionQueryFactory queryFactory = new ExpressionQueryFactory(fieldConfigurations);
+            final Expression expression = new FulltextExpression("test title");
+
+            // The result list only shows titles, so neither captions nor metadata have to be transferred
+            final SourceFilter titlesOnly = new SourceFilter(fieldConfigurations).include("title", "article.title");
+            final SourceFilter fullSource = new SourceFilter(fieldConfigurations);
+            try {
+                new SourceFilter(fieldConfigurations).include("subtitle");
+            } catch (IllegalArgumentException e) {
+                LOGGER.info("Invalid source filter rejected: {}", e.getMessage());
+            }
+
+            final SearchParameter firstPage = createSearchParameter(1);
+            final List<SearchResultItem> items = search(indexAlias, titlesOnly.applyTo(queryFactory.createSearchSource(expression, firstPage)))
+                    .getSearchResultItems();
+            LOGGER.info("Projected item: id = {}, title = {}, caption = {}", items.get(0).getId(), items.get(0).getAttribute("title"),
+                    items.get(0).getAttribute("caption"));
+
+            browse(indexAlias, queryFactory, expression, fullSource);
+            browse(indexAlias, queryFactory, expression, titlesOnly);
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+
+    private void browse(String indexAlias, ExpressionQueryFactory queryFactory, Expression expression, SourceFilter sourceFilter) {
+        final long start = System.nanoTime();
+        long sourceBytes = 0;
+        for (int pageIndex = 1; pageIndex <= DOCUMENT_COUNT / PAGE_SIZE; pageIndex++) {
+            final SearchSourceBuilder source = sourceFilter.applyTo(queryFactory.createSearchSource(expression, createSearchParameter(pageIndex)));
+            final SearchResponse response = searchResponse(indexAlias, source);
+            for (final SearchHit hit : response.getHits().getHits()) {
+                sourceBytes += hit.getSourceRef().length();
+            }
+            ResultPage.of(response, source);
+        }
+        LOGGER.info("{}: {} KB of source within {} ms", sourceFilter, sourceBytes / 1024, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private ResultPage search(String indexAlias, SearchSourceBuilder source) {
+        return ResultPage.of(searchResponse(indexAlias, source), source);
+    }
+
+    private SearchResponse searchResponse(String indexAlias, SearchSourceBuilder source) {
+        try {
+            return restClient.search(new SearchRequest(indexAlias).source(source), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new RuntimeException("Search failed!", e);
+        }
+    }
+
+    private SearchParameter createSearchParameter(int pageIndex) {
+        return SearchParameter.builder().pageSize(PAGE_SIZE).pageIndex(pageIndex).sortOptions(SortOption.asc("id")).build();
+    }
+}
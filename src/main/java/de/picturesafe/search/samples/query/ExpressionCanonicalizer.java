@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.query;
+
+import de.picturesafe.search.expression.DayExpression;
+import de.picturesafe.search.expression.DayRangeExpression;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.InExpression;
+import de.picturesafe.search.expression.IsNullExpression;
+import de.picturesafe.search.expression.KeywordExpression;
+import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.RangeValueExpression;
+import de.picturesafe.search.expression.ValueExpression;
+
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Renders {@link Expression}s in a canonical form: operands of AND/OR operations and values of IN expressions are sorted and nested
+ * operations with the same operator are flattened, so equivalent expressions have the same canonical form.
+ * <p>
+ * Every property of the known expression types is rendered explicitly and values are rendered with their type (dates as epoch millis),
+ * so different expressions never share a canonical form. Expressions and values of other types (including subclasses of the known
+ * expression types) cannot be rendered reliably, each occurrence gets a unique canonical form.
+ */
+public final class ExpressionCanonicalizer {
+
+    private static final AtomicLong UNIQUE_IDS = new AtomicLong();
+
+    private ExpressionCanonicalizer() {
+    }
+
+    public static String canonicalize(Expression expression) {
+        final Class<?> type = expression.getClass();
+        if (type == OperationExpression.class) {
+            final OperationExpression operationExpression = (OperationExpression) expression;
+            final List<String> operands = new ArrayList<>();
+            collectOperands(operationExpression.getOperator(), operationExpression, operands);
+            Collections.sort(operands);
+            return operationExpression.getOperator() + operands.stream().collect(Collectors.joining(",", "(", ")"));
+        } else if (type == MustNotExpression.class) {
+            return "NOT(" + canonicalize(((MustNotExpression) expression).getExpression()) + ")";
+        } else if (type == InExpression.class) {
+            final InExpression inExpression = (InExpression) expression;
+            return "IN(" + canonicalizeValue(inExpression.getName()) + ":" + Arrays.stream(inExpression.getValues())
+                    .map(ExpressionCanonicalizer::canonicalizeValue).sorted().collect(Collectors.joining(",")) + ")";
+        } else if (type == FulltextExpression.class) {
+            final Object value = ((FulltextExpression) expression).getValue();
+            return "FULLTEXT(" + canonicalizeValue((value != null) ? value.toString().trim().replaceAll("\\s+", " ") : null) + ")";
+        } else if (type == RangeValueExpression.class) {
+            final RangeValueExpression rangeExpression = (RangeValueExpression) expression;
+            return "RANGE(" + canonicalizeValue(rangeExpression.getName()) + ":" + canonicalizeValue(rangeExpression.getMinValue()) + ":"
+                    + canonicalizeValue(rangeExpression.getMaxValue()) + ")";
+        } else if (type == DayRangeExpression.class) {
+            final DayRangeExpression dayRangeExpression = (DayRangeExpression) expression;
+            return "DAY_RANGE(" + canonicalizeValue(dayRangeExpression.getName()) + ":" + canonicalizeValue(dayRangeExpression.getFromDay()) + ":"
+                    + canonicalizeValue(dayRangeExpression.getUntilDay()) + ")";
+        } else if (type == DayExpression.class) {
+            final DayExpression dayExpression = (DayExpression) expression;
+            return "DAY(" + canonicalizeValue(dayExpression.getName()) + ":" + dayExpression.getComparison() + ":"
+                    + canonicalizeValue(dayExpression.getDayDate()) + ")";
+        } else if (type == IsNullExpression.class) {
+            return "IS_NULL(" + canonicalizeValue(((IsNullExpression) expression).getName()) + ")";
+        } else if (type == ValueExpression.class || type == KeywordExpression.class) {
+            final ValueExpression valueExpression = (ValueExpression) expression;
+            return type.getSimpleName() + "(" + canonicalizeValue(valueExpression.getName()) + ":" + valueExpression.getComparison() + ":"
+                    + canonicalizeValue(valueExpression.getValue()) + ")";
+        } else {
+            return unique(expression);
+        }
+    }
+
+    /**
+     * Renders a value with its type: strings are quoted, dates are rendered as epoch millis. Values of types without a reliable
+     * representation get a unique canonical form.
+     *
+     * @param value Value to render
+     * @return Canonical form of the value
+     */
+    public static String canonicalizeValue(Object value) {
+        if (value == null) {
+            return "null";
+        } else if (value instanceof CharSequence || value instanceof Character) {
+            return '"' + value.toString().replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+        } else if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        } else if (value instanceof Date) {
+            return "date:" + ((Date) value).getTime();
+        } else if (value instanceof Enum) {
+            return ((Enum<?>) value).getDeclaringClass().getName() + "." + ((Enum<?>) value).name();
+        } else if (value instanceof TemporalAccessor && value.getClass().getName().startsWith("java.time.")) {
+            // ISO-8601 representation including all fields
+            return value.getClass().getSimpleName() + ":" + value;
+        } else if (value instanceof Locale) {
+            return "locale:" + ((Locale) value).toLanguageTag();
+        } else {
+            return unique(value);
+        }
+    }
+
+    private static String unique(Object object) {
+        return "UNIQUE(" + object.getClass().getName() + "#" + UNIQUE_IDS.incrementAndGet() + ")";
+    }
+
+    private static void collectOperands(OperationExpression.Operator operator, OperationExpression expression, List<String> operands) {
+        for (final Expression operand : expression.getOperands()) {
+            if (operand.getClass() == OperationExpression.class && ((OperationExpression) operand).getOperator() == operator) {
+                collectOperands(operator, (OperationExpression) operand, operands);
+            } else {
+                operands.add(canonicalize(operand));
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.query;
+
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.InExpression;
+import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.RangeValueExpression;
+import de.picturesafe.search.expression.ValueExpression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Simplifies {@link Expression} trees before they are translated into queries:
+ * <ul>
+ *     <li>nested operations with the same operator are flattened</li>
+ *     <li>duplicate operands are removed</li>
+ *     <li>equality tests on the same non-text field combined by OR are merged into one {@link InExpression}</li>
+ *     <li>double negations, operations with a single operand, IN expressions with a single value and ranges with equal bounds on
+ *     non-text fields are folded</li>
+ *     <li>operations without operands are dropped</li>
+ * </ul>
+ * The optimized expression matches the same documents as the original one.
+ */
+public class ExpressionOptimizer {
+
+    private final Set<String> textFields = new HashSet<>();
+
+    public ExpressionOptimizer(List<? extends FieldConfiguration> fieldConfigurations) {
+        for (final FieldConfiguration fieldConfiguration : fieldConfigurations) {
+            if (isText(fieldConfiguration)) {
+                textFields.add(fieldConfiguration.getName());
+            } else if (fieldConfiguration.isNestedObject()) {
+                for (final FieldConfiguration nestedField : fieldConfiguration.getNestedFields()) {
+                    if (isText(nestedField)) {
+                        textFields.add(fieldConfiguration.getName() + "." + nestedField.getName());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Optimizes an expression.
+     *
+     * @param expression Expression to optimize
+     * @return Optimized expression or the given expression if it consists of empty operations only
+     */
+    public Expression optimize(Expression expression) {
+        final Expression optimized = optimizeNode(expression);
+        return (optimized != null) ? optimized : expression;
+    }
+
+    // Returns null for empty subtrees
+    private Expression optimizeNode(Expression expression) {
+        if (expression instanceof OperationExpression) {
+            return optimizeOperation((OperationExpression) expression);
+        } else if (expression instanceof MustNotExpression) {
+            final Expression operand = optimizeNode(((MustNotExpression) expression).getExpression());
+            if (operand == null) {
+                return null;
+            } else if (operand instanceof MustNotExpression) {
+                return ((MustNotExpression) operand).getExpression();
+            }
+            return new MustNotExpression(operand);
+        } else if (expression instanceof InExpression && !isText(((InExpression) expression).getName())) {
+            final InExpression inExpression = (InExpression) expression;
+            final Object[] values = new LinkedHashSet<>(Arrays.asList(inExpression.getValues())).toArray();
+            return (values.length == 1) ? new ValueExpression(inExpression.getName(), values[0]) : new InExpression(inExpression.getName(), values);
+        } else if (expression instanceof RangeValueExpression) {
+            final RangeValueExpression rangeExpression = (RangeValueExpression) expression;
+            // On text fields a range compares raw terms, whereas an equality test becomes a phrase query on the analyzed text
+            if (rangeExpression.getMinValue() != null && Objects.equals(rangeExpression.getMinValue(), rangeExpression.getMaxValue())
+                    && !isText(rangeExpression.getName())) {
+                return new ValueExpression(rangeExpression.getName(), rangeExpression.getMinValue());
+            }
+        }
+        return expression;
+    }
+
+    private Expression optimizeOperation(OperationExpression expression) {
+        final OperationExpression.Operator operator = expression.getOperator();
+        List<Expression> operands = new ArrayList<>();
+        collectOperands(operator, expression, operands);
+        if (operator == OperationExpression.Operator.OR) {
+            operands = mergeEqualityTests(operands);
+        }
+
+        final Map<String, Expression> uniqueOperands = new LinkedHashMap<>();
+        for (final Expression operand : operands) {
+            uniqueOperands.putIfAbsent(ExpressionCanonicalizer.canonicalize(operand), operand);
+        }
+
+        if (uniqueOperands.isEmpty()) {
+            return null;
+        } else if (uniqueOperands.size() == 1) {
+            return uniqueOperands.values().iterator().next();
+        }
+        final Expression[] optimizedOperands = uniqueOperands.values().toArray(new Expression[0]);
+        return (operator == OperationExpression.Operator.OR) ? OperationExpression.or(optimizedOperands) : OperationExpression.and(optimizedOperands);
+    }
+
+    private void collectOperands(OperationExpression.Operator operator, OperationExpression expression, List<Expression> operands) {
+        for (final Expression operand : expression.getOperands()) {
+            final Expression optimized = optimizeNode(operand);
+            if (optimized instanceof OperationExpression && ((OperationExpression) optimized).getOperator() == operator) {
+                // Already optimized, so its operands are flat
+                operands.addAll(((OperationExpression) optimized).getOperands());
+            } else if (optimized != null) {
+                operands.add(optimized);
+            }
+        }
+    }
+
+    private List<Expression> mergeEqualityTests(List<Expression> operands) {
+        final Map<String, Set<Object>> valuesByField = new LinkedHashMap<>();
+        for (final Expression operand : operands) {
+            final String fieldName = getEqualityField(operand);
+            if (fieldName != null) {
+                valuesByField.computeIfAbsent(fieldName, name -> new LinkedHashSet<>()).addAll(getEqualityValues(operand));
+            }
+        }
+
+        final List<Expression> merged = new ArrayList<>(operands.size());
+        final Set<String> mergedFields = new HashSet<>();
+        for (final Expression operand : operands) {
+            final String fieldName = getEqualityField(operand);
+            if (fieldName == null) {
+                merged.add(operand);
+            } else if (mergedFields.add(fieldName)) {
+                final Set<Object> values = valuesByField.get(fieldName);
+                merged.add((values.size() == 1) ? operand : new InExpression(fieldName, values.toArray()));
+            }
+        }
+        return merged;
+    }
+
+    private String getEqualityField(Expression expression) {
+        if (expression.getClass() == ValueExpression.class) {
+            final ValueExpression valueExpression = (ValueExpression) expression;
+            if (valueExpression.getComparison() == ValueExpression.Comparison.EQ && valueExpression.getValue() != null
+                    && !isText(valueExpression.getName())) {
+                return valueExpression.getName();
+            }
+        } else if (expression instanceof InExpression && !isText(((InExpression) expression).getName())) {
+            return ((InExpression) expression).getName();
+        }
+        return null;
+    }
+
+    private List<Object> getEqualityValues(Expression expression) {
+        return (expression instanceof InExpression)
+                ? Arrays.asList(((InExpression) expression).getValues())
+                : Collections.singletonList(((ValueExpression) expression).getValue());
+    }
+
+    private boolean isText(String fieldName) {
+        return textFields.contains(fieldName);
+    }
+
+    private static boolean isText(FieldConfiguration fieldConfiguration) {
+        return "TEXT".equals(fieldConfiguration.getElasticsearchType().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.query;
+
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.expression.DayExpression;
+import de.picturesafe.search.expression.DayRangeExpression;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.InExpression;
+import de.picturesafe.search.expression.IsNullExpression;
+import de.picturesafe.search.expression.KeywordExpression;
+import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.RangeValueExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.parameter.SortOption;
+import org.apache.lucene.search.join.ScoreMode;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Translates picturesafe-search {@link Expression}s into Elasticsearch {@link QueryBuilder}s for operations not covered by the
+ * ElasticsearchService, e.g. delete-by-query or point in time searches. Field types and nested paths are resolved via the field
+ * configurations of the index alias.
+ * <p>
+ * Expressions are compiled into {@link QueryTemplate}s depending on their shape only, which are then bound to the values of the
+ * expression. {@link QueryTemplateCache} reuses compiled templates for expressions of the same shape.
+ */
+public class ExpressionQueryFactory {
+
+    private static final String KEYWORD_SUFFIX = ".keyword";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private final Map<String, String> fieldTypes = new HashMap<>();
+    private final Map<String, String> nestedPaths = new HashMap<>();
+    private final ZoneId zoneId;
+
+    public ExpressionQueryFactory(List<? extends FieldConfiguration> fieldConfigurations) {
+        this(fieldConfigurations, ZoneId.systemDefault());
+    }
+
+    public ExpressionQueryFactory(List<? extends FieldConfiguration> fieldConfigurations, ZoneId zoneId) {
+        this.zoneId = zoneId;
+        for (final FieldConfiguration fieldConfiguration : fieldConfigurations) {
+            fieldTypes.put(fieldConfiguration.getName(), fieldConfiguration.getElasticsearchType().toUpperCase(Locale.ROOT));
+            if (fieldConfiguration.isNestedObject()) {
+                for (final FieldConfiguration nestedField : fieldConfiguration.getNestedFields()) {
+                    final String name = fieldConfiguration.getName() + "." + nestedField.getName();
+                    fieldTypes.put(name, nestedField.getElasticsearchType().toUpperCase(Locale.ROOT));
+                    nestedPaths.put(name, fieldConfiguration.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a query for operations that do not need scores, e.g. deletions or exports. All clauses are executed in filter context.
+     *
+     * @param expression Expression to translate
+     * @return Query
+     */
+    public QueryBuilder createQuery(Expression expression) {
+        return createQuery(expression, false, QueryContextHints.NONE);
+    }
+
+    /**
+     * Creates a query for a search. Structured clauses (ranges, comparisons, day, IN and IS NULL expressions) are executed in filter context
+     * if they cannot affect the ranking or if the search is not sorted by relevance. Filter context skips scoring and allows Elasticsearch
+     * to cache the clauses. Hints forcing scoring context have no effect on clauses nested inside a clause executed in filter context.
+     *
+     * @param expression        Expression to translate
+     * @param searchParameter   Search parameter
+     * @param hints             Expressions forced into filter or scoring context
+     * @return Query
+     */
+    public QueryBuilder createQuery(Expression expression, SearchParameter searchParameter, QueryContextHints hints) {
+        return createQuery(expression, isSortedByRelevance(searchParameter), hints);
+    }
+
+    public QueryBuilder createQuery(Expression expression, SearchParameter searchParameter) {
+        return createQuery(expression, searchParameter, QueryContextHints.NONE);
+    }
+
+    private QueryBuilder createQuery(Expression expression, boolean sortedByRelevance, QueryContextHints hints) {
+        return compile(expression, sortedByRelevance, hints).bind(ExpressionShape.collectLeaves(expression));
+    }
+
+    /**
+     * Compiles the shape of an expression into a query template. All decisions depending on operators, comparisons, field types and nested
+     * paths are taken here, the template only binds the values of the leaf expressions passed in depth-first order.
+     *
+     * @param expression        Expression to compile
+     * @param sortedByRelevance TRUE if the search is sorted by relevance
+     * @param hints             Expressions forced into filter or scoring context
+     * @return Query template with one parameter slot per leaf expression
+     */
+    QueryTemplate compile(Expression expression, boolean sortedByRelevance, QueryContextHints hints) {
+        final boolean scoring = sortedByRelevance || hints.get(expression) == QueryContext.SCORING;
+        final QueryTemplate template = compile(expression, scoring, hints, new SlotCounter());
+        return scoring ? template : leaves -> QueryBuilders.constantScoreQuery(template.bind(leaves));
+    }
+
+    /**
+     * Creates the source of a search request including query, paging and sorts, see {@link ResultPage#of}.
+     *
+     * @param expression        Expression to translate
+     * @param searchParameter   Search parameter
+     * @return Search source
+     */
+    public SearchSourceBuilder createSearchSource(Expression expression, SearchParameter searchParameter) {
+        return createSearchSource(expression, searchParameter, TotalHitsTracking.EXACT);
+    }
+
+    /**
+     * Creates the source of a search request including query, paging and sorts, see {@link ResultPage#of}.
+     *
+     * @param expression        Expression to translate
+     * @param searchParameter   Search parameter
+     * @param totalHitsTracking Tracking of the total number of hits
+     * @return Search source
+     */
+    public SearchSourceBuilder createSearchSource(Expression expression, SearchParameter searchParameter, TotalHitsTracking totalHitsTracking) {
+        final SearchSourceBuilder source = createPagedSource(searchParameter).query(createQuery(expression, searchParameter));
+        createSorts(searchParameter.getSortOptions()).forEach(source::sort);
+        return totalHitsTracking.applyTo(source);
+    }
+
+    /**
+     * Creates a search source with the paging of a search parameter, but without query and sorts.
+     *
+     * @param searchParameter Search parameter
+     * @return Search source
+     */
+    public static SearchSourceBuilder createPagedSource(SearchParameter searchParameter) {
+        final Integer pageSizeParameter = searchParameter.getPageSize();
+        final Integer pageIndexParameter = searchParameter.getPageIndex();
+        final int pageSize = (pageSizeParameter != null) ? pageSizeParameter : DEFAULT_PAGE_SIZE;
+        final int pageIndex = (pageIndexParameter != null) ? pageIndexParameter : 1;
+        return new SearchSourceBuilder().from((pageIndex - 1) * pageSize).size(pageSize).trackTotalHits(true);
+    }
+
+    /**
+     * Creates the sorts of a search. Text fields are sorted by their keyword sub field.
+     *
+     * @param sortOptions Sort options, may be NULL
+     * @return Sorts, empty if no sort options are given
+     */
+    public List<SortBuilder<?>> createSorts(List<SortOption> sortOptions) {
+        final List<SortBuilder<?>> sorts = new ArrayList<>();
+        if (sortOptions != null) {
+            for (final SortOption sortOption : sortOptions) {
+                final SortOrder order = (sortOption.getSortDirection() == SortOption.Direction.DESC) ? SortOrder.DESC : SortOrder.ASC;
+                if (SortOption.relevance().getFieldName().equals(sortOption.getFieldName())) {
+                    sorts.add(SortBuilders.scoreSort().order(order));
+                } else {
+                    sorts.add(SortBuilders.fieldSort(keywordField(sortOption.getFieldName())).order(order));
+                }
+            }
+        }
+        return sorts;
+    }
+
+    public boolean isSortedByRelevance(SearchParameter searchParameter) {
+        final List<SortOption> sortOptions = searchParameter.getSortOptions();
+        return sortOptions == null || sortOptions.isEmpty()
+                || SortOption.relevance().getFieldName().equals(sortOptions.get(0).getFieldName());
+    }
+
+    private QueryTemplate compile(Expression expression, boolean scoring, QueryContextHints hints, SlotCounter slots) {
+        if (scoring && hints.get(expression) == QueryContext.FILTER) {
+            final QueryTemplate filter = compile(expression, false, hints, slots);
+            return leaves -> QueryBuilders.constantScoreQuery(filter.bind(leaves));
+        } else if (expression instanceof OperationExpression) {
+            return compileOperation((OperationExpression) expression, scoring, hints, slots);
+        } else if (expression instanceof MustNotExpression) {
+            final QueryTemplate operand = compile(((MustNotExpression) expression).getExpression(), false, hints, slots);
+            return leaves -> QueryBuilders.boolQuery().mustNot(operand.bind(leaves));
+        } else {
+            return compileLeaf(expression, slots.next());
+        }
+    }
+
+    private QueryTemplate compileOperation(OperationExpression expression, boolean scoring, QueryContextHints hints, SlotCounter slots) {
+        final List<QueryTemplate> shouldClauses = new ArrayList<>();
+        final List<QueryTemplate> filterClauses = new ArrayList<>();
+        final List<QueryTemplate> mustClauses = new ArrayList<>();
+        for (final Expression operand : expression.getOperands()) {
+            final QueryContext forcedContext = hints.get(operand);
+            if (expression.getOperator() == OperationExpression.Operator.OR) {
+                shouldClauses.add(compile(operand, scoring || forcedContext == QueryContext.SCORING, hints, slots));
+            } else if (forcedContext == QueryContext.FILTER || (forcedContext != QueryContext.SCORING && (!scoring || isStructured(operand)))) {
+                // Structured clauses all hits have to match add the same score to every hit, so they cannot affect the ranking
+                filterClauses.add(compile(operand, false, hints, slots));
+            } else {
+                mustClauses.add(compile(operand, true, hints, slots));
+            }
+        }
+
+        return leaves -> {
+            final BoolQueryBuilder boolQuery = QueryBuilders.boolQuery();
+            shouldClauses.forEach(clause -> boolQuery.should(clause.bind(leaves)));
+            filterClauses.forEach(clause -> boolQuery.filter(clause.bind(leaves)));
+            mustClauses.forEach(clause -> boolQuery.must(clause.bind(leaves)));
+            return boolQuery;
+        };
+    }
+
+    private QueryTemplate compileLeaf(Expression expression, int slot) {
+        if (expression instanceof FulltextExpression) {
+            return leaves -> QueryBuilders.queryStringQuery(String.valueOf(((FulltextExpression) leaves[slot]).getValue()))
+                    .defaultField(FieldConfiguration.FIELD_NAME_FULLTEXT).defaultOperator(Operator.AND);
+        } else if (expression instanceof KeywordExpression) {
+            return compileKeywordQuery((KeywordExpression) expression, slot);
+        } else if (expression instanceof InExpression) {
+            final String name = ((InExpression) expression).getName();
+            final String keywordField = keywordField(name);
+            final String nestedPath = nestedPaths.get(name);
+            return leaves -> nested(nestedPath, QueryBuilders.termsQuery(keywordField, Arrays.asList(((InExpression) leaves[slot]).getValues())));
+        } else if (expression instanceof RangeValueExpression) {
+            final String name = ((RangeValueExpression) expression).getName();
+            final String nestedPath = nestedPaths.get(name);
+            return leaves -> {
+                final RangeValueExpression rangeExpression = (RangeValueExpression) leaves[slot];
+                return nested(nestedPath, QueryBuilders.rangeQuery(name).gte(rangeExpression.getMinValue()).lte(rangeExpression.getMaxValue()));
+            };
+        } else if (expression instanceof DayRangeExpression) {
+            final String name = ((DayRangeExpression) expression).getName();
+            final String nestedPath = nestedPaths.get(name);
+            return leaves -> {
+                final DayRangeExpression dayRangeExpression = (DayRangeExpression) leaves[slot];
+                return nested(nestedPath, dayRangeQuery(name)
+                        .gte(startOfDay(dayRangeExpression.getFromDay(), 0)).lt(startOfDay(dayRangeExpression.getUntilDay(), 1)));
+            };
+        } else if (expression instanceof DayExpression) {
+            return compileDayQuery((DayExpression) expression, slot);
+        } else if (expression instanceof IsNullExpression) {
+            final String name = ((IsNullExpression) expression).getName();
+            final String nestedPath = nestedPaths.get(name);
+            return leaves -> QueryBuilders.boolQuery().mustNot(nested(nestedPath, QueryBuilders.existsQuery(name)));
+        } else if (expression instanceof ValueExpression) {
+            final ValueExpression valueExpression = (ValueExpression) expression;
+            return compileValueQuery(valueExpression.getName(), valueExpression.getComparison(), slot);
+        } else {
+            throw new IllegalArgumentException("Unsupported expression type: " + expression.getClass().getName());
+        }
+    }
+
+    // Structured clauses match exact values, text comparisons and fulltext clauses are scored by term frequency
+    private boolean isStructured(Expression expression) {
+        if (expression instanceof OperationExpression) {
+            return ((OperationExpression) expression).getOperands().stream().allMatch(this::isStructured);
+        } else if (expression instanceof FulltextExpression) {
+            return false;
+        } else if (expression instanceof KeywordExpression || expression instanceof InExpression || expression instanceof RangeValueExpression
+                || expression instanceof DayRangeExpression || expression instanceof DayExpression || expression instanceof IsNullExpression
+                || expression instanceof MustNotExpression) {
+            return true;
+        } else if (expression instanceof ValueExpression) {
+            final ValueExpression valueExpression = (ValueExpression) expression;
+            return !isText(valueExpression.getName()) || valueExpression.getComparison() == ValueExpression.Comparison.NOT_EQ
+                    || valueExpression.getComparison() == ValueExpression.Comparison.NOT_LIKE;
+        }
+        return false;
+    }
+
+    private QueryTemplate compileValueQuery(String name, ValueExpression.Comparison comparison, int slot) {
+        final String nestedPath = nestedPaths.get(name);
+        final boolean text = isText(name);
+        switch (comparison) {
+            case EQ:
+                return text
+                        ? leaves -> nested(nestedPath, QueryBuilders.matchPhraseQuery(name, value(leaves, slot)))
+                        : leaves -> nested(nestedPath, QueryBuilders.termQuery(name, value(leaves, slot)));
+            case NOT_EQ:
+                final QueryTemplate equals = compileValueQuery(name, ValueExpression.Comparison.EQ, slot);
+                return leaves -> QueryBuilders.boolQuery().mustNot(equals.bind(leaves));
+            case GT:
+                return leaves -> nested(nestedPath, QueryBuilders.rangeQuery(name).gt(value(leaves, slot)));
+            case GE:
+                return leaves -> nested(nestedPath, QueryBuilders.rangeQuery(name).gte(value(leaves, slot)));
+            case LT:
+                return leaves -> nested(nestedPath, QueryBuilders.rangeQuery(name).lt(value(leaves, slot)));
+            case LE:
+                return leaves -> nested(nestedPath, QueryBuilders.rangeQuery(name).lte(value(leaves, slot)));
+            case LIKE:
+                return leaves -> nested(nestedPath, QueryBuilders.queryStringQuery(String.valueOf(value(leaves, slot))).field(name)
+                        .defaultOperator(Operator.AND));
+            case NOT_LIKE:
+                // Like NOT_EQ: documents without a nested object matching the pattern, not documents with any nested object not matching it
+                final QueryTemplate like = compileValueQuery(name, ValueExpression.Comparison.LIKE, slot);
+                return leaves -> QueryBuilders.boolQuery().mustNot(like.bind(leaves));
+            case TERM_STARTS_WITH:
+                return text
+                        ? leaves -> nested(nestedPath, QueryBuilders.matchPhrasePrefixQuery(name, value(leaves, slot)))
+                        : leaves -> nested(nestedPath, QueryBuilders.prefixQuery(name, String.valueOf(value(leaves, slot))));
+            default:
+                throw new IllegalArgumentException("Unsupported comparison " + comparison + " for field '" + name + "'!");
+        }
+    }
+
+    private QueryTemplate compileKeywordQuery(KeywordExpression expression, int slot) {
+        final String name = expression.getName();
+        final String keywordField = keywordField(name);
+        final String nestedPath = nestedPaths.get(name);
+        switch (expression.getComparison()) {
+            case EQ:
+                return leaves -> nested(nestedPath, QueryBuilders.termQuery(keywordField, keywordValue(leaves, slot)));
+            case NOT_EQ:
+                return leaves -> QueryBuilders.boolQuery().mustNot(nested(nestedPath, QueryBuilders.termQuery(keywordField, keywordValue(leaves, slot))));
+            case TERM_STARTS_WITH:
+                return leaves -> nested(nestedPath, QueryBuilders.prefixQuery(keywordField, String.valueOf(keywordValue(leaves, slot))));
+            default:
+                throw new IllegalArgumentException("Unsupported comparison " + expression.getComparison() + " for keyword field '" + name + "'!");
+        }
+    }
+
+    private QueryTemplate compileDayQuery(DayExpression expression, int slot) {
+        final String name = expression.getName();
+        final String nestedPath = nestedPaths.get(name);
+        switch (expression.getComparison()) {
+            case EQ:
+                return leaves -> nested(nestedPath, dayRangeQuery(name).gte(startOfDay(day(leaves, slot), 0)).lt(startOfDay(day(leaves, slot), 1)));
+            case GT:
+                return leaves -> nested(nestedPath, dayRangeQuery(name).gte(startOfDay(day(leaves, slot), 1)));
+            case GE:
+                return leaves -> nested(nestedPath, dayRangeQuery(name).gte(startOfDay(day(leaves, slot), 0)));
+            case LT:
+                return leaves -> nested(nestedPath, dayRangeQuery(name).lt(startOfDay(day(leaves, slot), 0)));
+            case LE:
+                return leaves -> nested(nestedPath, dayRangeQuery(name).lt(startOfDay(day(leaves, slot), 1)));
+            default:
+                throw new IllegalArgumentException("Unsupported comparison " + expression.getComparison() + " for day field '" + name + "'!");
+        }
+    }
+
+    private static Object value(Expression[] leaves, int slot) {
+        return ((ValueExpression) leaves[slot]).getValue();
+    }
+
+    private static Object keywordValue(Expression[] leaves, int slot) {
+        return ((KeywordExpression) leaves[slot]).getValue();
+    }
+
+    private static Date day(Expression[] leaves, int slot) {
+        return ((DayExpression) leaves[slot]).getDayDate();
+    }
+
+    private RangeQueryBuilder dayRangeQuery(String fieldName) {
+        // Day boundaries are passed as epoch millis independently of the date format of the mapping
+        return QueryBuilders.rangeQuery(fieldName).format("epoch_millis");
+    }
+
+    private static QueryBuilder nested(String nestedPath, QueryBuilder query) {
+        return (nestedPath != null) ? QueryBuilders.nestedQuery(nestedPath, query, ScoreMode.None) : query;
+    }
+
+    private String keywordField(String fieldName) {
+        return isText(fieldName) ? fieldName + KEYWORD_SUFFIX : fieldName;
+    }
+
+    private boolean isText(String fieldName) {
+        return "TEXT".equals(fieldTypes.get(fieldName));
+    }
+
+    private long startOfDay(Date day, int plusDays) {
+        final LocalDate localDate = day.toInstant().atZone(zoneId).toLocalDate().plusDays(plusDays);
+        return localDate.atStartOfDay(zoneId).toInstant().toEpochMilli();
+    }
+
+    // Assigns parameter slots to leaf expressions in depth-first order, see ExpressionShape
+    private static class SlotCounter {
+
+        private int next;
+
+        int next() {
+            return next++;
+        }
+    }
+}
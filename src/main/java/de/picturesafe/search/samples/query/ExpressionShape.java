@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.query;
+
+import de.picturesafe.search.expression.DayExpression;
+import de.picturesafe.search.expression.DayRangeExpression;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.InExpression;
+import de.picturesafe.search.expression.IsNullExpression;
+import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.RangeValueExpression;
+import de.picturesafe.search.expression.ValueExpression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shape of an {@link Expression}: its structure, field names, operators, comparisons and query context hints, but not its values.
+ * Expressions of the same shape are translated into the same query structure, so they can share one {@link QueryTemplate}. The leaf
+ * expressions carrying the values are collected in depth-first order, matching the parameter slots of the template.
+ */
+final class ExpressionShape {
+
+    private final String key;
+    private final Expression[] leaves;
+
+    private ExpressionShape(String key, Expression[] leaves) {
+        this.key = key;
+        this.leaves = leaves;
+    }
+
+    static ExpressionShape of(Expression expression, boolean sortedByRelevance, QueryContextHints hints) {
+        final StringBuilder key = new StringBuilder(sortedByRelevance ? "R:" : "F:");
+        final List<Expression> leaves = new ArrayList<>();
+        appendShape(expression, hints, key, leaves);
+        return new ExpressionShape(key.toString(), leaves.toArray(new Expression[0]));
+    }
+
+    static Expression[] collectLeaves(Expression expression) {
+        final List<Expression> leaves = new ArrayList<>();
+        appendShape(expression, QueryContextHints.NONE, null, leaves);
+        return leaves.toArray(new Expression[0]);
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    Expression[] getLeaves() {
+        return leaves;
+    }
+
+    // Key is null if only the leaves are collected
+    private static void appendShape(Expression expression, QueryContextHints hints, StringBuilder key, List<Expression> leaves) {
+        if (key != null && hints.get(expression) != null) {
+            key.append(hints.get(expression)).append('!');
+        }
+
+        if (expression instanceof OperationExpression) {
+            final OperationExpression operationExpression = (OperationExpression) expression;
+            append(key, operationExpression.getOperator().name());
+            append(key, "(");
+            for (final Expression operand : operationExpression.getOperands()) {
+                appendShape(operand, hints, key, leaves);
+                append(key, ",");
+            }
+            append(key, ")");
+        } else if (expression instanceof MustNotExpression) {
+            append(key, "NOT(");
+            appendShape(((MustNotExpression) expression).getExpression(), hints, key, leaves);
+            append(key, ")");
+        } else {
+            leaves.add(expression);
+            if (key != null) {
+                key.append(expression.getClass().getSimpleName()).append('(').append(leafShape(expression)).append(')');
+            }
+        }
+    }
+
+    private static void append(StringBuilder key, String text) {
+        if (key != null) {
+            key.append(text);
+        }
+    }
+
+    private static String leafShape(Expression expression) {
+        if (expression instanceof DayExpression) {
+            final DayExpression dayExpression = (DayExpression) expression;
+            return dayExpression.getName() + ":" + dayExpression.getComparison();
+        } else if (expression instanceof ValueExpression) {
+            final ValueExpression valueExpression = (ValueExpression) expression;
+            return valueExpression.getName() + ":" + valueExpression.getComparison();
+        } else if (expression instanceof InExpression) {
+            return ((InExpression) expression).getName();
+        } else if (expression instanceof RangeValueExpression) {
+            return ((RangeValueExpression) expression).getName();
+        } else if (expression instanceof DayRangeExpression) {
+            return ((DayRangeExpression) expression).getName();
+        } else if (expression instanceof IsNullExpression) {
+            return ((IsNullExpression) expression).getName();
+        } else {
+            // Fulltext expressions have no field
+            return "";
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.query;
+
+import de.picturesafe.search.expression.Expression;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Forces single expressions into filter or scoring context, overriding the automatic choice of the {@link ExpressionQueryFactory}.
+ * Expressions are matched by identity, so equal expressions at different positions of a tree can be forced independently.
+ */
+public class QueryContextHints {
+
+    public static final QueryContextHints NONE = new QueryContextHints(Collections.emptyMap());
+
+    private final Map<Expression, QueryContext> contexts;
+
+    public QueryContextHints() {
+        this(new IdentityHashMap<>());
+    }
+
+    private QueryContextHints(Map<Expression, QueryContext> contexts) {
+        this.contexts = contexts;
+    }
+
+    public QueryContextHints filter(Expression expression) {
+        contexts.put(expression, QueryContext.FILTER);
+        return this;
+    }
+
+    public QueryContextHints scoring(Expression expression) {
+        contexts.put(expression, QueryContext.SCORING);
+        return this;
+    }
+
+    public QueryContext get(Expression expression) {
+        return contexts.get(expression);
+    }
+}
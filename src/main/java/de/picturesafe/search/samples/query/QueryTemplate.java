@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.query;
+
+import de.picturesafe.search.expression.Expression;
+import org.elasticsearch.index.query.QueryBuilder;
+
+/**
+ * Query compiled from the shape of an {@link Expression}, see {@link ExpressionShape}. Templates are immutable and thread safe, each call
+ * of {@link #bind(Expression[])} creates a new query.
+ */
+@FunctionalInterface
+interface QueryTemplate {
+
+    /**
+     * Binds the values of the leaf expressions to the template.
+     *
+     * @param leaves Leaf expressions in depth-first order, one per parameter slot
+     * @return Query
+     */
+    QueryBuilder bind(Expression[] leaves);
+}
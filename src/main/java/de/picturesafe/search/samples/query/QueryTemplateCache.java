@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.query;
+
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.parameter.SearchParameter;
+import org.elasticsearch.index.query.QueryBuilder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Translation cache in front of an {@link ExpressionQueryFactory}, keyed by the shape of the expressions (see {@link ExpressionShape}).
+ * The first expression of a shape is compiled into a {@link QueryTemplate}, following expressions of the same shape only bind their values.
+ * The number of templates is bounded, shapes exceeding the limit are compiled without being cached.
+ */
+public class QueryTemplateCache {
+
+    private final ExpressionQueryFactory queryFactory;
+    private final int maxTemplates;
+    private final Map<String, QueryTemplate> templates = new ConcurrentHashMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    public QueryTemplateCache(ExpressionQueryFactory queryFactory, int maxTemplates) {
+        this.queryFactory = queryFactory;
+        this.maxTemplates = maxTemplates;
+    }
+
+    /**
+     * Same as {@link ExpressionQueryFactory#createQuery(Expression)}.
+     *
+     * @param expression Expression to translate
+     * @return Query
+     */
+    public QueryBuilder createQuery(Expression expression) {
+        return createQuery(expression, false, QueryContextHints.NONE);
+    }
+
+    /**
+     * Same as {@link ExpressionQueryFactory#createQuery(Expression, SearchParameter, QueryContextHints)}.
+     *
+     * @param expression        Expression to translate
+     * @param searchParameter   Search parameter
+     * @param hints             Expressions forced into filter or scoring context
+     * @return Query
+     */
+    public QueryBuilder createQuery(Expression expression, SearchParameter searchParameter, QueryContextHints hints) {
+        return createQuery(expression, queryFactory.isSortedByRelevance(searchParameter), hints);
+    }
+
+    public QueryBuilder createQuery(Expression expression, SearchParameter searchParameter) {
+        return createQuery(expression, searchParameter, QueryContextHints.NONE);
+    }
+
+    public int getTemplateCount() {
+        return templates.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public void clear() {
+        templates.clear();
+    }
+
+    private QueryBuilder createQuery(Expression expression, boolean sortedByRelevance, QueryContextHints hints) {
+        final ExpressionShape shape = ExpressionShape.of(expression, sortedByRelevance, hints);
+        QueryTemplate template = templates.get(shape.getKey());
+        if (template != null) {
+            hitCount.increment();
+        } else {
+            missCount.increment();
+            template = queryFactory.compile(expression, sortedByRelevance, hints);
+            if (templates.size() < maxTemplates) {
+                // Concurrent misses of the same shape compile equal templates, the first one wins
+                final QueryTemplate cached = templates.putIfAbsent(shape.getKey(), template);
+                template = (cached != null) ? cached : template;
+            }
+        }
+        return template.bind(shape.getLeaves());
+    }
+}
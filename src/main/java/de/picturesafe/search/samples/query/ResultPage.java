@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.query;
+
+import de.picturesafe.search.elasticsearch.model.SearchResultItem;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Page of search result items of a search created via {@link ExpressionQueryFactory#createSearchSource}.
+ */
+public class ResultPage {
+
+    private final List<SearchResultItem> searchResultItems;
+    private final long totalHitCount;
+    private final boolean totalHitCountExact;
+    private final int pageIndex;
+    private final int pageSize;
+
+    public ResultPage(List<SearchResultItem> searchResultItems, long totalHitCount, int pageIndex, int pageSize) {
+        this(searchResultItems, totalHitCount, true, pageIndex, pageSize);
+    }
+
+    public ResultPage(List<SearchResultItem> searchResultItems, long totalHitCount, boolean totalHitCountExact, int pageIndex, int pageSize) {
+        this.searchResultItems = searchResultItems;
+        this.totalHitCount = totalHitCount;
+        this.totalHitCountExact = totalHitCountExact;
+        this.pageIndex = pageIndex;
+        this.pageSize = pageSize;
+    }
+
+    public static ResultPage of(SearchResponse response, SearchSourceBuilder source) {
+        final SearchHit[] hits = response.getHits().getHits();
+        final List<SearchResultItem> searchResultItems = new ArrayList<>(hits.length);
+        for (final SearchHit hit : hits) {
+            searchResultItems.add(new SearchResultItem(hit.getSourceAsMap()));
+        }
+        // Without total hit tracking only the hits up to the current page are known. A partial page is the last one, unless it is an empty
+        // page past the end, whose offset is only a lower bound.
+        final TotalHits totalHits = response.getHits().getTotalHits();
+        final long totalHitCount = (totalHits != null) ? totalHits.value : source.from() + hits.length;
+        final boolean totalHitCountExact = (totalHits != null)
+                ? totalHits.relation == TotalHits.Relation.EQUAL_TO
+                : hits.length < source.size() && (source.from() == 0 || hits.length > 0);
+        return new ResultPage(searchResultItems, totalHitCount, totalHitCountExact, getPageIndex(source), source.size());
+    }
+
+    /**
+     * Gets the page index requested by a search source.
+     *
+     * @param source Search source
+     * @return Page index starting with 1, 1 for searches without hits (page size 0)
+     */
+    public static int getPageIndex(SearchSourceBuilder source) {
+        return (source.size() > 0) ? source.from() / source.size() + 1 : 1;
+    }
+
+    public List<SearchResultItem> getSearchResultItems() {
+        return searchResultItems;
+    }
+
+    public long getTotalHitCount() {
+        return totalHitCount;
+    }
+
+    /**
+     * @return TRUE if the total hit count is exact, FALSE if it is a lower bound because total hit tracking was capped or disabled
+     */
+    public boolean isTotalHitCountExact() {
+        return totalHitCountExact;
+    }
+
+    public int getPageIndex() {
+        return pageIndex;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getPageCount() {
+        return (pageSize > 0) ? (int) ((totalHitCount + pageSize - 1) / pageSize) : 0;
+    }
+}
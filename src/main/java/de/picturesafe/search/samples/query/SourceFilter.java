@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.query;
+
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Restricts the fields returned in the source of search hits. Only the returned fields are transferred and deserialized into the
+ * attributes of the search result items, so searches reading a few fields of large documents should include just these fields.
+ * <p>
+ * Field names are validated against the field configurations of the index alias. Fields of nested objects are addressed by their path,
+ * e.g. "article.title". The id field is always returned, search result items are identified by it.
+ */
+public class SourceFilter {
+
+    private final Set<String> fieldNames = new HashSet<>();
+    private final Set<String> includes = new LinkedHashSet<>();
+    private final Set<String> excludes = new LinkedHashSet<>();
+
+    public SourceFilter(List<? extends FieldConfiguration> fieldConfigurations) {
+        for (final FieldConfiguration fieldConfiguration : fieldConfigurations) {
+            fieldNames.add(fieldConfiguration.getName());
+            if (fieldConfiguration.isNestedObject()) {
+                for (final FieldConfiguration nestedField : fieldConfiguration.getNestedFields()) {
+                    fieldNames.add(fieldConfiguration.getName() + "." + nestedField.getName());
+                }
+            }
+        }
+    }
+
+    public SourceFilter include(String... fieldNames) {
+        for (final String fieldName : fieldNames) {
+            includes.add(validate(fieldName));
+        }
+        return this;
+    }
+
+    public SourceFilter exclude(String... fieldNames) {
+        for (final String fieldName : fieldNames) {
+            if (FieldConfiguration.FIELD_NAME_ID.equals(fieldName)) {
+                throw new IllegalArgumentException("Field '" + fieldName + "' cannot be excluded!");
+            }
+            excludes.add(validate(fieldName));
+        }
+        return this;
+    }
+
+    public SearchSourceBuilder applyTo(SearchSourceBuilder source) {
+        if (includes.isEmpty() && excludes.isEmpty()) {
+            return source;
+        }
+
+        final String[] includeArray;
+        if (includes.isEmpty()) {
+            includeArray = null;
+        } else {
+            final Set<String> includesWithId = new LinkedHashSet<>(includes);
+            includesWithId.add(FieldConfiguration.FIELD_NAME_ID);
+            includeArray = includesWithId.toArray(new String[0]);
+        }
+        return source.fetchSource(includeArray, excludes.toArray(new String[0]));
+    }
+
+    private String validate(String fieldName) {
+        if (!fieldNames.contains(fieldName)) {
+            throw new IllegalArgumentException("Field '" + fieldName + "' is not configured!");
+        }
+        return fieldName;
+    }
+
+    @Override
+    public String toString() {
+        return "SourceFilter{includes=" + includes + ", excludes=" + excludes + "}";
+    }
+}
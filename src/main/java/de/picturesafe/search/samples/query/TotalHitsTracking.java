@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.query;
+
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.internal.SearchContext;
+
+/**
+ * Controls how exactly the total number of hits of a search is counted. Exact counts require visiting all matching documents, capped or
+ * disabled counts allow Elasticsearch to skip documents which cannot make it into the requested page.
+ */
+public final class TotalHitsTracking {
+
+    public static final TotalHitsTracking EXACT = new TotalHitsTracking(Integer.MAX_VALUE);
+    public static final TotalHitsTracking OFF = new TotalHitsTracking(SearchContext.TRACK_TOTAL_HITS_DISABLED);
+
+    private final int trackTotalHitsUpTo;
+
+    private TotalHitsTracking(int trackTotalHitsUpTo) {
+        this.trackTotalHitsUpTo = trackTotalHitsUpTo;
+    }
+
+    /**
+     * Counts hits exactly up to a limit, larger counts are reported as lower bound.
+     *
+     * @param limit Maximum number of hits counted exactly
+     * @return Total hits tracking
+     */
+    public static TotalHitsTracking upTo(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative: " + limit);
+        }
+        return new TotalHitsTracking(limit);
+    }
+
+    public SearchSourceBuilder applyTo(SearchSourceBuilder source) {
+        return source.trackTotalHitsUpTo(trackTotalHitsUpTo);
+    }
+
+    @Override
+    public String toString() {
+        if (this == EXACT) {
+            return "TotalHitsTracking{exact}";
+        } else if (this == OFF) {
+            return "TotalHitsTracking{off}";
+        }
+        return "TotalHitsTracking{upTo=" + trackTotalHitsUpTo + "}";
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.querytemplates;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.RangeValueExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import de.picturesafe.search.samples.query.ExpressionQueryFactory;
+import de.picturesafe.search.samples.query.QueryTemplateCache;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+@Component
+@ComponentScan
+public class QueryTemplates implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryTemplates.class);
+
+    private static final int BENCHMARK_QUERY_COUNT = 200_000;
+    private static final int BENCHMARK_ROUNDS = 5;
+    private static final String[] TERMS = {"test", "title", "another", "one more"};
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(QueryTemplates.class)) {
+            final QueryTemplates queryTemplates = ctx.getBean(QueryTemplates.class);
+            queryTemplates.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+            singleIndexElasticsearchService.addToIndex(DataChangeProcessingMode.BLOCKING, Arrays.asList(
+                    DocumentBuilder.id(1).put("title", "This is a test title").put("count", 101).build(),
+                    DocumentBuilder.id(2).put("title", "This is another test title").put("count", 102).build(),
+                    DocumentBuilder.id(3).put("title", "This is one more test title").put("count", 103).build()
+            ));
+
+            final ExpressionQueryFactory queryFactory = new ExpressionQueryFactory(fieldConfigurationProvider.getFieldConfigurations(indexAlias));
+            final QueryTemplateCache templateCache = new QueryTemplateCache(queryFactory, 1000);
+            final SearchParameter searchParameter = SearchParameter.DEFAULT;
+
+            // Same shape as in GettingStarted, only the values differ from search to search
+            final Function<Integer, Expression> expressions = i -> OperationExpression.and(
+                    new FulltextExpression(TERMS[i % TERMS.length]),
+                    new RangeValueExpression("count", 100 + i % 3, 103));
+
+            // Cached templates create the same queries and find the same documents
+            for (int i = 0; i < TERMS.length; i++) {
+                final QueryBuilder query = queryFactory.createQuery(expressions.apply(i), searchParameter);
+                final QueryBuilder templateQuery = templateCache.createQuery(expressions.apply(i), searchParameter);
+                if (!query.equals(templateQuery)) {
+                    throw new IllegalStateException("Query template creates a different query: " + templateQuery);
+                }
+                LOGGER.info("Query {} finds {} documents", i, count(indexAlias, templateQuery));
+            }
+
+            for (int round = 1; round <= BENCHMARK_ROUNDS; round++) {
+                // The first rounds warm up both paths
+                final long uncached = benchmark(i -> queryFactory.createQuery(expressions.apply(i), searchParameter));
+                final long cached = benchmark(i -> templateCache.createQuery(expressions.apply(i), searchParameter));
+                LOGGER.info("Round {}: {} translations uncached within {} ms, from template within {} ms", round, BENCHMARK_QUERY_COUNT,
+                        uncached, cached);
+            }
+            LOGGER.info("Template cache: {} templates, {} hits, {} misses", templateCache.getTemplateCount(), templateCache.getHitCount(),
+                    templateCache.getMissCount());
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+
+    private long benchmark(Function<Integer, QueryBuilder> translation) {
+        final long start = System.nanoTime();
+        int hashSum = 0;
+        for (int i = 0; i < BENCHMARK_QUERY_COUNT; i++) {
+            // Consume the queries, so the JIT cannot drop the translation
+            hashSum += translation.apply(i).hashCode();
+        }
+        final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOGGER.debug("Hash sum: {}", hashSum);
+        return millis;
+    }
+
+    private long count(String indexAlias, QueryBuilder query) {
+        try {
+            return restClient.search(new SearchRequest(indexAlias).source(new SearchSourceBuilder().query(query)), RequestOptions.DEFAULT)
+                    .getHits().getTotalHits().value;
+        } catch (IOException e) {
+            throw new RuntimeException("Search failed!", e);
+        }
+    }
+}
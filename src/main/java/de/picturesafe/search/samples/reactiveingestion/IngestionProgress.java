@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.reactiveingestion;
+
+public class IngestionProgress {
+
+    private final String indexAlias;
+    private final long acknowledgedCount;
+    private final long failedCount;
+    private final boolean completed;
+
+    IngestionProgress(String indexAlias, long acknowledgedCount, long failedCount, boolean completed) {
+        this.indexAlias = indexAlias;
+        this.acknowledgedCount = acknowledgedCount;
+        this.failedCount = failedCount;
+        this.completed = completed;
+    }
+
+    public String getIndexAlias() {
+        return indexAlias;
+    }
+
+    public long getAcknowledgedCount() {
+        return acknowledgedCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    @Override
+    public String toString() {
+        return "IngestionProgress{indexAlias='" + indexAlias + "', acknowledged=" + acknowledgedCount + ", failed=" + failedCount
+                + ", completed=" + completed + "}";
+    }
+}
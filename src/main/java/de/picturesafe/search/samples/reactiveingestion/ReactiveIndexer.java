@@ -0,0 +1,209 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.reactiveingestion;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Indexes the documents of a {@link Flow.Publisher}. Demand is only signalled when Elasticsearch has acknowledged (or rejected) a batch,
+ * so at most {@code batchSize * (maxInFlightBatches + 1)} documents are held in memory, however slow the cluster is. Batches are sent in
+ * {@link DataChangeProcessingMode#BACKGROUND} mode, the index alias is refreshed on completion so that all documents are searchable
+ * when the returned future completes.
+ */
+public class ReactiveIndexer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveIndexer.class);
+
+    private final ElasticsearchService elasticsearchService;
+    private final RestHighLevelClient restClient;
+    private final int batchSize;
+    private final int maxInFlightBatches;
+
+    public ReactiveIndexer(ElasticsearchService elasticsearchService, RestHighLevelClient restClient, int batchSize, int maxInFlightBatches) {
+        if (batchSize < 1 || maxInFlightBatches < 1) {
+            throw new IllegalArgumentException("Batch size and number of in-flight batches must be positive!");
+        }
+        this.elasticsearchService = elasticsearchService;
+        this.restClient = restClient;
+        this.batchSize = batchSize;
+        this.maxInFlightBatches = maxInFlightBatches;
+    }
+
+    /**
+     * Subscribes to the publisher and indexes its documents into the given index alias. If the publisher signals an error, the documents
+     * of the incomplete batch are discarded, batches already sent are awaited and the future completes with the publisher error.
+     *
+     * @param indexAlias        Name of the index alias
+     * @param documents         Publisher of the documents to index
+     * @param progressListener  Receives a progress event after every acknowledged or failed batch and a final one on completion
+     * @return Future completed with the final progress when all documents have been processed
+     */
+    public CompletableFuture<IngestionProgress> ingest(String indexAlias, Flow.Publisher<Map<String, Object>> documents,
+                                                       Consumer<IngestionProgress> progressListener) {
+        final IndexingSubscriber subscriber = new IndexingSubscriber(indexAlias, progressListener);
+        documents.subscribe(subscriber);
+        return subscriber.completion;
+    }
+
+    private class IndexingSubscriber implements Flow.Subscriber<Map<String, Object>> {
+
+        private final String indexAlias;
+        private final Consumer<IngestionProgress> progressListener;
+        private final ExecutorService executorService = Executors.newFixedThreadPool(maxInFlightBatches);
+        private final CompletableFuture<IngestionProgress> completion = new CompletableFuture<>();
+
+        private final AtomicLong acknowledgedCount = new AtomicLong();
+        private final AtomicLong failedCount = new AtomicLong();
+        private final AtomicInteger inFlightBatches = new AtomicInteger();
+        private final AtomicBoolean finishing = new AtomicBoolean();
+
+        private Flow.Subscription subscription;
+        private List<Map<String, Object>> currentBatch = new ArrayList<>();
+        private List<Map<String, Object>> finalBatch;
+        private volatile boolean terminated;
+        private volatile Throwable publisherError;
+
+        IndexingSubscriber(String indexAlias, Consumer<IngestionProgress> progressListener) {
+            this.indexAlias = indexAlias;
+            this.progressListener = progressListener;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            // One batch more than may be in flight, so the next batch is filled while the others are being sent
+            request((long) batchSize * (maxInFlightBatches + 1));
+        }
+
+        @Override
+        public void onNext(Map<String, Object> document) {
+            currentBatch.add(document);
+            if (currentBatch.size() >= batchSize) {
+                dispatch(currentBatch);
+                currentBatch = new ArrayList<>(batchSize);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            LOGGER.warn("Publisher failed, discarding {} documents not yet sent to index alias '{}'", currentBatch.size(), indexAlias);
+            publisherError = throwable;
+            currentBatch = null;
+            terminated = true;
+            tryFinish();
+        }
+
+        @Override
+        public void onComplete() {
+            finalBatch = currentBatch.isEmpty() ? null : currentBatch;
+            currentBatch = null;
+            // Written after finalBatch, so acknowledging threads see the final batch once they see the termination.
+            terminated = true;
+            tryFinish();
+        }
+
+        private void dispatch(List<Map<String, Object>> batch) {
+            inFlightBatches.incrementAndGet();
+            executorService.execute(() -> {
+                send(batch);
+                if (!terminated) {
+                    request(batch.size());
+                }
+                inFlightBatches.decrementAndGet();
+                tryFinish();
+            });
+        }
+
+        private void send(List<Map<String, Object>> batch) {
+            try {
+                elasticsearchService.addToIndex(indexAlias, DataChangeProcessingMode.BACKGROUND, batch);
+                acknowledgedCount.addAndGet(batch.size());
+            } catch (RuntimeException e) {
+                LOGGER.warn("Indexing batch of {} documents into index alias '{}' failed", batch.size(), indexAlias, e);
+                failedCount.addAndGet(batch.size());
+            }
+            publishProgress(false);
+        }
+
+        private void tryFinish() {
+            if (terminated && inFlightBatches.get() == 0 && finishing.compareAndSet(false, true)) {
+                executorService.execute(() -> {
+                    try {
+                        if (finalBatch != null) {
+                            send(finalBatch);
+                        }
+                        // BLOCKING would only cover the shards of the last batch, earlier batches may have been written to other shards
+                        refresh();
+                        final IngestionProgress progress = publishProgress(true);
+                        if (publisherError != null) {
+                            completion.completeExceptionally(publisherError);
+                        } else {
+                            completion.complete(progress);
+                        }
+                    } catch (RuntimeException e) {
+                        completion.completeExceptionally(e);
+                    } finally {
+                        executorService.shutdown();
+                    }
+                });
+            }
+        }
+
+        private void refresh() {
+            try {
+                restClient.indices().refresh(new RefreshRequest(indexAlias), RequestOptions.DEFAULT);
+            } catch (IOException e) {
+                throw new RuntimeException("Refreshing index alias '" + indexAlias + "' failed!", e);
+            }
+        }
+
+        // Subscription.request must be called serially, acknowledgements arrive concurrently.
+        private synchronized void request(long n) {
+            subscription.request(n);
+        }
+
+        private IngestionProgress publishProgress(boolean completed) {
+            final IngestionProgress progress = new IngestionProgress(indexAlias, acknowledgedCount.get(), failedCount.get(), completed);
+            if (progressListener != null) {
+                try {
+                    progressListener.accept(progress);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Progress listener failed", e);
+                }
+            }
+            return progress;
+        }
+    }
+}
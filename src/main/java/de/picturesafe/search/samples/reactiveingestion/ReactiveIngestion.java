@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.reactiveingestion;
+
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+@ComponentScan
+public class ReactiveIngestion implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveIngestion.class);
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(ReactiveIngestion.class)) {
+            final ReactiveIngestion reactiveIngestion = ctx.getBean(ReactiveIngestion.class);
+            reactiveIngestion.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+
+            // The publisher only produces documents on demand, the demand is driven by the acknowledgements of Elasticsearch.
+            final ReactiveIndexer reactiveIndexer = new ReactiveIndexer(elasticsearchService, restClient, 500, 2);
+            final IngestionProgress progress = reactiveIndexer.ingest(indexPresetConfiguration.getIndexAlias(),
+                    new DocumentRangePublisher(1, 10_000), p -> LOGGER.info(p.toString())).join();
+            LOGGER.info("Ingestion finished: {}", progress);
+
+            // Strictly sequential batches: one batch in flight while the next one is collected
+            final ReactiveIndexer sequentialIndexer = new ReactiveIndexer(elasticsearchService, restClient, 500, 1);
+            final IngestionProgress sequentialProgress = sequentialIndexer.ingest(indexPresetConfiguration.getIndexAlias(),
+                    new DocumentRangePublisher(10_001, 15_000), p -> LOGGER.info(p.toString())).join();
+            LOGGER.info("Sequential ingestion finished: {}", sequentialProgress);
+
+            final SearchResult searchResult = singleIndexElasticsearchService.search(new FulltextExpression("test title"), SearchParameter.DEFAULT);
+            LOGGER.info("Index contains {} documents", searchResult.getTotalHitCount());
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+
+    // Simple publisher emitting documents with ids in the given range, respecting the requested demand.
+    private static class DocumentRangePublisher implements Flow.Publisher<Map<String, Object>> {
+
+        private final long fromId;
+        private final long toId;
+
+        DocumentRangePublisher(long fromId, long toId) {
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super Map<String, Object>> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+
+                private final AtomicLong demand = new AtomicLong();
+                private final AtomicInteger workInProgress = new AtomicInteger();
+                private long nextId = fromId;
+                private volatile boolean done;
+
+                @Override
+                public void request(long n) {
+                    demand.getAndUpdate(d -> (d + n < 0) ? Long.MAX_VALUE : d + n);
+                    drain();
+                }
+
+                @Override
+                public void cancel() {
+                    done = true;
+                }
+
+                // Emits on the requesting thread, workInProgress makes sure onNext is never called concurrently.
+                private void drain() {
+                    if (workInProgress.getAndIncrement() != 0) {
+                        return;
+                    }
+                    do {
+                        while (!done && demand.get() > 0 && nextId <= toId) {
+                            final long id = nextId++;
+                            demand.decrementAndGet();
+                            subscriber.onNext(DocumentBuilder.id(id).put("title", "This is a test title " + id).put("count", id).build());
+                        }
+                        if (!done && nextId > toId) {
+                            done = true;
+                            subscriber.onComplete();
+                        }
+                    } while (workInProgress.decrementAndGet() != 0);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.reindex;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class ZeroDowntimeReindex implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ZeroDowntimeReindex.class);
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(ZeroDowntimeReindex.class)) {
+            final ZeroDowntimeReindex zeroDowntimeReindex = ctx.getBean(ZeroDowntimeReindex.class);
+            zeroDowntimeReindex.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+
+            singleIndexElasticsearchService.addToIndex(DataChangeProcessingMode.BLOCKING, Arrays.asList(
+                    DocumentBuilder.id(1).put("title", "This is a test title").put("count", 101).build(),
+                    DocumentBuilder.id(2).put("title", "This is another test title").put("count", 102).build()
+            ));
+            search();
+
+            // Full rebuild: the alias keeps serving the old index until the new one is loaded, refreshed and replicated.
+            final ZeroDowntimeReindexer reindexer = new ZeroDowntimeReindexer(restClient, elasticsearchService, indexPresetConfiguration)
+                    .batchSize(1000)
+                    .maxConcurrentRequests(4);
+            final String newIndexName = reindexer.reindex(LongStream.rangeClosed(1, 10_000)
+                    .mapToObj(id -> DocumentBuilder.id(id).put("title", "This is a rebuilt test title " + id).put("count", id).build())
+                    .iterator());
+            LOGGER.info("Alias '{}' now points to index '{}'", indexPresetConfiguration.getIndexAlias(), newIndexName);
+            search();
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+
+    private void search() {
+        final SearchResult searchResult = singleIndexElasticsearchService.search(new FulltextExpression("test title"), SearchParameter.DEFAULT);
+        LOGGER.info("Found {} documents", searchResult.getTotalHitCount());
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.reindex;
+
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthRequest;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Rebuilds the index behind an alias without downtime: a new physical index is created and bulk-loaded in parallel with zero replicas and
+ * refresh disabled. Afterwards the replicas of the index preset and the original refresh interval of the new index are restored, the index
+ * is refreshed and, as soon as it is at least yellow, the alias is swapped atomically from the old to the new index. Searches on the alias
+ * are served by the old index until the swap.
+ * <p>
+ * Writes to the alias during the reindex still go to the old index and are lost with the swap, so the source of the documents must be
+ * write-frozen (or the writes must be replayed to the new index) until {@link #reindex(Iterator)} returns.
+ */
+public class ZeroDowntimeReindexer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ZeroDowntimeReindexer.class);
+    private static final String REFRESH_INTERVAL = "index.refresh_interval";
+
+    private final RestHighLevelClient restClient;
+    private final ElasticsearchService elasticsearchService;
+    private final IndexPresetConfiguration indexPresetConfiguration;
+    private int batchSize = 1000;
+    private int maxConcurrentRequests = 4;
+    private boolean deleteOldIndex = true;
+
+    public ZeroDowntimeReindexer(RestHighLevelClient restClient, ElasticsearchService elasticsearchService,
+                                 IndexPresetConfiguration indexPresetConfiguration) {
+        this.restClient = restClient;
+        this.elasticsearchService = elasticsearchService;
+        this.indexPresetConfiguration = indexPresetConfiguration;
+    }
+
+    public ZeroDowntimeReindexer batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public ZeroDowntimeReindexer maxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        return this;
+    }
+
+    public ZeroDowntimeReindexer deleteOldIndex(boolean deleteOldIndex) {
+        this.deleteOldIndex = deleteOldIndex;
+        return this;
+    }
+
+    /**
+     * Builds a new index from the given documents and swaps the alias to it.
+     *
+     * @param documents Documents of the new index
+     * @return Name of the new index
+     */
+    public String reindex(Iterator<Map<String, Object>> documents) {
+        final String indexAlias = indexPresetConfiguration.getIndexAlias();
+        final Set<String> oldIndexNames = getIndexNames(indexAlias);
+        // Creates the index with the mapping of the preset and field configurations, but without alias
+        final String newIndexName = elasticsearchService.createIndex(indexAlias);
+        LOGGER.info("Reindexing alias '{}' from {} into new index '{}'", indexAlias, oldIndexNames, newIndexName);
+
+        try {
+            // NULL if the index uses the default refresh interval
+            final String refreshInterval = restClient.indices()
+                    .getSettings(new GetSettingsRequest().indices(newIndexName).names(REFRESH_INTERVAL), RequestOptions.DEFAULT)
+                    .getSetting(newIndexName, REFRESH_INTERVAL);
+            updateSettings(newIndexName, Settings.builder().put("index.number_of_replicas", 0).put(REFRESH_INTERVAL, "-1").build());
+            final long documentCount = bulkLoad(newIndexName, documents);
+
+            final Settings.Builder settings = Settings.builder().put("index.number_of_replicas", indexPresetConfiguration.getNumberOfReplicas());
+            if (refreshInterval != null) {
+                settings.put(REFRESH_INTERVAL, refreshInterval);
+            } else {
+                settings.putNull(REFRESH_INTERVAL);
+            }
+            updateSettings(newIndexName, settings.build());
+            restClient.indices().refresh(new RefreshRequest(newIndexName), RequestOptions.DEFAULT);
+            final ClusterHealthResponse health = restClient.cluster().health(
+                    new ClusterHealthRequest(newIndexName).waitForYellowStatus().timeout(TimeValue.timeValueMinutes(5)), RequestOptions.DEFAULT);
+            if (health.isTimedOut() || health.getStatus() == ClusterHealthStatus.RED) {
+                throw new IllegalStateException("New index '" + newIndexName + "' did not become available, status is " + health.getStatus() + "!");
+            }
+
+            swapAlias(indexAlias, oldIndexNames, newIndexName);
+            LOGGER.info("Swapped alias '{}' to new index '{}' with {} documents", indexAlias, newIndexName, documentCount);
+        } catch (IOException | RuntimeException e) {
+            final RuntimeException failure = new RuntimeException("Reindexing alias '" + indexAlias + "' failed!", e);
+            try {
+                elasticsearchService.deleteIndex(newIndexName);
+            } catch (RuntimeException deleteException) {
+                failure.addSuppressed(deleteException);
+            }
+            throw failure;
+        }
+
+        if (deleteOldIndex) {
+            oldIndexNames.forEach(elasticsearchService::deleteIndex);
+        }
+        return newIndexName;
+    }
+
+    private long bulkLoad(String indexName, Iterator<Map<String, Object>> documents) {
+        final Semaphore requestPermits = new Semaphore(maxConcurrentRequests);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final AtomicLong documentCount = new AtomicLong();
+
+        BulkRequest bulkRequest = new BulkRequest();
+        while (documents.hasNext() && failure.get() == null) {
+            final Map<String, Object> document = documents.next();
+            final Object id = document.get(FieldConfiguration.FIELD_NAME_ID);
+            if (id == null) {
+                failure.compareAndSet(null,
+                        new IllegalArgumentException("Document without field '" + FieldConfiguration.FIELD_NAME_ID + "': " + document));
+                break;
+            }
+            bulkRequest.add(new IndexRequest(indexName).id(String.valueOf(id)).source(toSource(document)));
+            if (bulkRequest.numberOfActions() >= batchSize || !documents.hasNext()) {
+                acquire(requestPermits, 1);
+                final int actionCount = bulkRequest.numberOfActions();
+                restClient.bulkAsync(bulkRequest, RequestOptions.DEFAULT, new ActionListener<BulkResponse>() {
+                    @Override
+                    public void onResponse(BulkResponse response) {
+                        if (response.hasFailures()) {
+                            failure.compareAndSet(null, new IllegalStateException(response.buildFailureMessage()));
+                        } else {
+                            documentCount.addAndGet(actionCount);
+                        }
+                        requestPermits.release();
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        failure.compareAndSet(null, e);
+                        requestPermits.release();
+                    }
+                });
+                bulkRequest = new BulkRequest();
+            }
+        }
+
+        acquire(requestPermits, maxConcurrentRequests);
+        if (failure.get() != null) {
+            throw new RuntimeException("Bulk loading index '" + indexName + "' failed!", failure.get());
+        }
+        return documentCount.get();
+    }
+
+    // ElasticsearchService.addToIndex cannot target an index without alias, so the documents are converted here the same way:
+    // dates are written in ISO-8601 format, nested documents and collections are converted recursively.
+    private static Map<String, Object> toSource(Map<String, Object> document) {
+        final Map<String, Object> source = new LinkedHashMap<>(document.size());
+        document.forEach((name, value) -> source.put(name, toSourceValue(value)));
+        return source;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object toSourceValue(Object value) {
+        if (value instanceof Date) {
+            return DateTimeFormatter.ISO_INSTANT.format(((Date) value).toInstant());
+        } else if (value instanceof Map) {
+            return toSource((Map<String, Object>) value);
+        } else if (value instanceof Collection) {
+            final List<Object> values = new ArrayList<>(((Collection<?>) value).size());
+            ((Collection<?>) value).forEach(element -> values.add(toSourceValue(element)));
+            return values;
+        } else {
+            return value;
+        }
+    }
+
+    private void swapAlias(String indexAlias, Set<String> oldIndexNames, String newIndexName) throws IOException {
+        final IndicesAliasesRequest request = new IndicesAliasesRequest();
+        for (final String oldIndexName : oldIndexNames) {
+            request.addAliasAction(IndicesAliasesRequest.AliasActions.remove().index(oldIndexName).alias(indexAlias));
+        }
+        request.addAliasAction(IndicesAliasesRequest.AliasActions.add().index(newIndexName).alias(indexAlias));
+        // All alias actions are applied in one atomic cluster state update
+        restClient.indices().updateAliases(request, RequestOptions.DEFAULT);
+    }
+
+    private Set<String> getIndexNames(String indexAlias) {
+        try {
+            if (!restClient.indices().exists(new GetIndexRequest(indexAlias), RequestOptions.DEFAULT)) {
+                throw new IllegalStateException("Index alias '" + indexAlias + "' does not exist!");
+            }
+            return restClient.indices().getAlias(new GetAliasesRequest(indexAlias), RequestOptions.DEFAULT).getAliases().keySet();
+        } catch (IOException e) {
+            throw new RuntimeException("Resolving index alias '" + indexAlias + "' failed!", e);
+        }
+    }
+
+    private void updateSettings(String indexName, Settings settings) throws IOException {
+        restClient.indices().putSettings(new UpdateSettingsRequest(indexName).settings(settings), RequestOptions.DEFAULT);
+    }
+
+    private void acquire(Semaphore semaphore, int permits) {
+        try {
+            semaphore.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while bulk loading!", e);
+        }
+    }
+}
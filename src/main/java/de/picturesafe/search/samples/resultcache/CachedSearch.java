@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.resultcache;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+@Component
+@ComponentScan
+public class CachedSearch implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachedSearch.class);
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(CachedSearch.class)) {
+            final CachedSearch cachedSearch = ctx.getBean(CachedSearch.class);
+            cachedSearch.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+            final CachingSearchService searchService = new CachingSearchService(elasticsearchService,
+                    new SearchResultCache(1000, 100_000, 1, TimeUnit.MINUTES));
+
+            searchService.addToIndex(indexAlias, DataChangeProcessingMode.BLOCKING, Arrays.asList(
+                    DocumentBuilder.id(1).put("title", "This is a test title").put("count", 101).build(),
+                    DocumentBuilder.id(2).put("title", "This is another test title").put("count", 102).build(),
+                    DocumentBuilder.id(3).put("title", "This is one more test title").put("count", 103).build()
+            ));
+
+            // Dashboard searches: only the first one of each is sent to Elasticsearch
+            for (int i = 0; i < 1000; i++) {
+                searchService.search(indexAlias, new FulltextExpression("test title"), SearchParameter.DEFAULT);
+                searchService.search(indexAlias, OperationExpression.and(
+                        new FulltextExpression("test"), new ValueExpression("count", ValueExpression.Comparison.GE, 102)), SearchParameter.DEFAULT);
+            }
+            LOGGER.info("After dashboard searches: {}", searchService.getStatistics());
+
+            // Operands in different order and extra whitespace map to the same cache entry
+            final Expression reordered = OperationExpression.and(
+                    new ValueExpression("count", ValueExpression.Comparison.GE, 102), new FulltextExpression("  test "));
+            searchService.search(indexAlias, reordered, SearchParameter.DEFAULT);
+            LOGGER.info("After reordered search: {}", searchService.getStatistics());
+
+            // Data changes invalidate all cached results of the alias
+            searchService.addToIndex(indexAlias, DataChangeProcessingMode.BLOCKING, Collections.singletonList(
+                    DocumentBuilder.id(4).put("title", "This is the latest test title").put("count", 104).build()));
+            final SearchResult searchResult = searchService.search(indexAlias, new FulltextExpression("test title"), SearchParameter.DEFAULT);
+            LOGGER.info("Found {} documents after data change: {}", searchResult.getTotalHitCount(), searchService.getStatistics());
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.resultcache;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.parameter.SearchParameter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Client side result cache in front of {@link ElasticsearchService#search}. Data changes made through this service invalidate the cached
+ * results of the affected index alias, changes made elsewhere must be reported via {@link #invalidate(String)}. Changes in BACKGROUND mode
+ * become visible with the next refresh of the index, results cached before that refresh are only dropped by the time to live.
+ */
+public class CachingSearchService {
+
+    private final ElasticsearchService elasticsearchService;
+    private final SearchResultCache cache;
+
+    public CachingSearchService(ElasticsearchService elasticsearchService, SearchResultCache cache) {
+        this.elasticsearchService = elasticsearchService;
+        this.cache = cache;
+    }
+
+    public SearchResult search(String indexAlias, Expression expression, SearchParameter searchParameter) {
+        final SearchCacheKey key = SearchCacheKey.create(indexAlias, expression, searchParameter);
+        SearchResult searchResult = cache.get(key);
+        if (searchResult == null) {
+            final long generation = cache.getGeneration(indexAlias);
+            searchResult = elasticsearchService.search(indexAlias, expression, searchParameter);
+            cache.put(key, searchResult, generation);
+        }
+        return searchResult;
+    }
+
+    public void addToIndex(String indexAlias, DataChangeProcessingMode dataChangeProcessingMode, List<Map<String, Object>> documents) {
+        try {
+            elasticsearchService.addToIndex(indexAlias, dataChangeProcessingMode, documents);
+        } finally {
+            cache.invalidate(indexAlias);
+        }
+    }
+
+    public void removeFromIndex(String indexAlias, DataChangeProcessingMode dataChangeProcessingMode, long id) {
+        try {
+            elasticsearchService.removeFromIndex(indexAlias, dataChangeProcessingMode, id);
+        } finally {
+            cache.invalidate(indexAlias);
+        }
+    }
+
+    public void invalidate(String indexAlias) {
+        cache.invalidate(indexAlias);
+    }
+
+    public SearchResultCache.Statistics getStatistics() {
+        return cache.getStatistics();
+    }
+}
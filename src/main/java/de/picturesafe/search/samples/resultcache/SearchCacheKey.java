@@ -0,0 +1,174 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.resultcache;
+
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.query.ExpressionCanonicalizer;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.time.temporal.TemporalAccessor;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Cache key built from the canonical form of an {@link Expression} (see {@link ExpressionCanonicalizer}) and a {@link SearchParameter}, so
+ * equivalent searches share one key.
+ * <p>
+ * The search parameter is rendered from its properties instead of its toString() representation, which is not guaranteed to contain
+ * all of them. Paging and sort options are rendered explicitly, all other properties (aggregations, language, ...) are read via their
+ * getters, recursing into nested objects such as aggregation definitions. Scalar values are rendered with their type (see
+ * {@link ExpressionCanonicalizer#canonicalizeValue(Object)}), objects without getters make the key unique.
+ */
+public final class SearchCacheKey {
+
+    private static final int MAX_DEPTH = 8;
+    private static final Set<String> EXPLICIT_PROPERTIES = new HashSet<>(Arrays.asList("class", "pageSize", "pageIndex", "sortOptions"));
+    // Readable properties sorted by name, introspected once per class
+    private static final Map<Class<?>, List<PropertyDescriptor>> PROPERTIES = new ConcurrentHashMap<>();
+
+    private final String indexAlias;
+    private final String canonicalForm;
+
+    private SearchCacheKey(String indexAlias, String canonicalForm) {
+        this.indexAlias = indexAlias;
+        this.canonicalForm = canonicalForm;
+    }
+
+    public static SearchCacheKey create(String indexAlias, Expression expression, SearchParameter searchParameter) {
+        final StringBuilder key = new StringBuilder(ExpressionCanonicalizer.canonicalize(expression));
+        key.append("|size=").append(searchParameter.getPageSize()).append("|page=").append(searchParameter.getPageIndex()).append("|sort=");
+        appendValue(key, searchParameter.getSortOptions(), 1);
+        key.append('|');
+        appendProperties(key, searchParameter, EXPLICIT_PROPERTIES, 0);
+        return new SearchCacheKey(indexAlias, key.toString());
+    }
+
+    private static void appendValue(StringBuilder key, Object value, int depth) {
+        if (value == null || value instanceof CharSequence || value instanceof Number || value instanceof Boolean || value instanceof Character
+                || value instanceof Enum || value instanceof Date || value instanceof TemporalAccessor || value instanceof Locale) {
+            key.append(ExpressionCanonicalizer.canonicalizeValue(value));
+        } else if (value instanceof Collection) {
+            key.append('[');
+            for (final Object element : (Collection<?>) value) {
+                appendValue(key, element, depth + 1);
+                key.append(',');
+            }
+            key.append(']');
+        } else if (value.getClass().isArray()) {
+            key.append('[');
+            for (int i = 0; i < Array.getLength(value); i++) {
+                appendValue(key, Array.get(value, i), depth + 1);
+                key.append(',');
+            }
+            key.append(']');
+        } else if (value instanceof Map) {
+            // Keys are rendered in natural order of their string form, so equal maps render equally regardless of their iteration order
+            final Map<String, Object> sorted = new TreeMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> sorted.put(String.valueOf(k), v));
+            key.append('{');
+            sorted.forEach((k, v) -> {
+                key.append(k).append('=');
+                appendValue(key, v, depth + 1);
+                key.append(',');
+            });
+            key.append('}');
+        } else if (getProperties(value.getClass()).stream().anyMatch(property -> !"class".equals(property.getName()))) {
+            key.append(value.getClass().getName());
+            appendProperties(key, value, Collections.singleton("class"), depth);
+        } else {
+            // Objects without getters cannot be told apart reliably
+            key.append(ExpressionCanonicalizer.canonicalizeValue(value));
+        }
+    }
+
+    private static void appendProperties(StringBuilder key, Object bean, Set<String> excludedProperties, int depth) {
+        if (depth >= MAX_DEPTH) {
+            throw new IllegalArgumentException("Search parameter is nested too deeply at " + bean.getClass().getName() + "!");
+        }
+
+        key.append('(');
+        for (final PropertyDescriptor property : getProperties(bean.getClass())) {
+            if (excludedProperties.contains(property.getName())) {
+                continue;
+            }
+            key.append(property.getName()).append('=');
+            try {
+                appendValue(key, property.getReadMethod().invoke(bean), depth + 1);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalArgumentException("Reading property '" + property.getName() + "' of " + bean.getClass().getName() + " failed!", e);
+            }
+            key.append(',');
+        }
+        key.append(')');
+    }
+
+    private static List<PropertyDescriptor> getProperties(Class<?> type) {
+        return PROPERTIES.computeIfAbsent(type, t -> {
+            try {
+                return Arrays.stream(Introspector.getBeanInfo(t).getPropertyDescriptors())
+                        .filter(property -> property.getReadMethod() != null)
+                        .sorted(Comparator.comparing(PropertyDescriptor::getName))
+                        .collect(Collectors.toList());
+            } catch (IntrospectionException e) {
+                throw new IllegalArgumentException("Reading properties of " + t.getName() + " failed!", e);
+            }
+        });
+    }
+
+    public String getIndexAlias() {
+        return indexAlias;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final SearchCacheKey that = (SearchCacheKey) o;
+        return indexAlias.equals(that.indexAlias) && canonicalForm.equals(that.canonicalForm);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(indexAlias, canonicalForm);
+    }
+
+    @Override
+    public String toString() {
+        return indexAlias + ":" + canonicalForm;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.resultcache;
+
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LRU cache for search results bounded by entry count and total weight, the weight of a result is its number of items. Entries expire
+ * after a time to live and can be invalidated per index alias.
+ */
+public class SearchResultCache {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long timeToLiveNanos;
+    private final LinkedHashMap<SearchCacheKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> aliasGenerations = new HashMap<>();
+    private long weight;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expirationCount;
+    private long invalidationCount;
+
+    public SearchResultCache(int maxEntries, long maxWeight, long timeToLive, TimeUnit timeUnit) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.timeToLiveNanos = timeUnit.toNanos(timeToLive);
+    }
+
+    public synchronized SearchResult get(SearchCacheKey key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        } else if (System.nanoTime() - entry.createdNanos > timeToLiveNanos) {
+            remove(key);
+            expirationCount++;
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.searchResult;
+    }
+
+    /**
+     * Returns the current generation of an index alias, it is incremented on every invalidation of the alias.
+     *
+     * @param indexAlias Index alias
+     * @return Generation of the index alias
+     */
+    public synchronized long getGeneration(String indexAlias) {
+        return aliasGenerations.getOrDefault(indexAlias, 0L);
+    }
+
+    /**
+     * Adds a search result unless the index alias has been invalidated since the search was started.
+     *
+     * @param key           Cache key
+     * @param searchResult  Search result
+     * @param generation    Generation of the index alias before the search was started
+     */
+    public synchronized void put(SearchCacheKey key, SearchResult searchResult, long generation) {
+        if (generation != getGeneration(key.getIndexAlias())) {
+            return;
+        }
+        final long entryWeight = searchResult.getSearchResultItems().size() + 1;
+        if (entryWeight > maxWeight) {
+            return;
+        }
+        remove(key);
+        entries.put(key, new Entry(searchResult, entryWeight, System.nanoTime()));
+        weight += entryWeight;
+
+        final Iterator<Map.Entry<SearchCacheKey, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && iterator.hasNext()) {
+            // Iteration order is least recently used first
+            weight -= iterator.next().getValue().weight;
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    public synchronized void invalidate(String indexAlias) {
+        aliasGenerations.merge(indexAlias, 1L, Long::sum);
+        final Iterator<Map.Entry<SearchCacheKey, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<SearchCacheKey, Entry> entry = iterator.next();
+            if (entry.getKey().getIndexAlias().equals(indexAlias)) {
+                weight -= entry.getValue().weight;
+                iterator.remove();
+                invalidationCount++;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized Statistics getStatistics() {
+        return new Statistics(entries.size(), weight, hitCount, missCount, evictionCount, expirationCount, invalidationCount);
+    }
+
+    private void remove(SearchCacheKey key) {
+        final Entry entry = entries.remove(key);
+        if (entry != null) {
+            weight -= entry.weight;
+        }
+    }
+
+    private static class Entry {
+
+        private final SearchResult searchResult;
+        private final long weight;
+        private final long createdNanos;
+
+        Entry(SearchResult searchResult, long weight, long createdNanos) {
+            this.searchResult = searchResult;
+            this.weight = weight;
+            this.createdNanos = createdNanos;
+        }
+    }
+
+    public static class Statistics {
+
+        private final int entryCount;
+        private final long weight;
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long expirationCount;
+        private final long invalidationCount;
+
+        Statistics(int entryCount, long weight, long hitCount, long missCount, long evictionCount, long expirationCount, long invalidationCount) {
+            this.entryCount = entryCount;
+            this.weight = weight;
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.expirationCount = expirationCount;
+            this.invalidationCount = invalidationCount;
+        }
+
+        public int getEntryCount() {
+            return entryCount;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public long getExpirationCount() {
+            return expirationCount;
+        }
+
+        public long getInvalidationCount() {
+            return invalidationCount;
+        }
+
+        public double getHitRatio() {
+            final long requestCount = hitCount + missCount;
+            return (requestCount > 0) ? (double) hitCount / requestCount : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{entries=" + entryCount + ", weight=" + weight + ", hits=" + hitCount + ", misses=" + missCount + ", evictions="
+                    + evictionCount + ", expirations=" + expirationCount + ", invalidations=" + invalidationCount + ", hitRatio="
+                    + String.format("%.2f", getHitRatio()) + "}";
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.searchafter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Page of a cursor based search.
+ */
+public class CursorPage {
+
+    private final List<Map<String, Object>> documents;
+    private final String nextCursor;
+
+    CursorPage(List<Map<String, Object>> documents, String nextCursor) {
+        this.documents = documents;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Map<String, Object>> getDocuments() {
+        return documents;
+    }
+
+    /**
+     * Gets the cursor of the next page.
+     *
+     * @return Cursor token or NULL if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.searchafter;
+
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import de.picturesafe.search.samples.bulkindexing.BulkIndexer;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class CursorPagination implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CursorPagination.class);
+
+    private static final int DOCUMENT_COUNT = 25_000;
+    private static final int PAGE_SIZE = 500;
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(CursorPagination.class)) {
+            final CursorPagination cursorPagination = ctx.getBean(CursorPagination.class);
+            cursorPagination.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+            try (BulkIndexer bulkIndexer = BulkIndexer.builder(elasticsearchService, restClient, indexAlias).build()) {
+                LongStream.rangeClosed(1, DOCUMENT_COUNT).forEach(id -> bulkIndexer.add(DocumentBuilder.id(id)
+                        .put("title", "This is a test title " + id)
+                        .put("count", id % 100)
+                        .build()));
+                bulkIndexer.flush();
+            }
+
+            final Expression expression = new FulltextExpression("test title");
+            // Paging by page index fails beyond max_result_window
+            final int deepPageIndex = DOCUMENT_COUNT / PAGE_SIZE;
+            try {
+                singleIndexElasticsearchService.search(expression, createSearchParameter(deepPageIndex));
+            } catch (RuntimeException e) {
+                LOGGER.info("Paging by page index failed for page {}: {}", deepPageIndex, e.getMessage());
+            }
+
+            final CursorSearchService cursorSearchService
+                    = new CursorSearchService(restClient, indexAlias, fieldConfigurationProvider.getFieldConfigurations(indexAlias));
+            final Set<Object> ids = new HashSet<>();
+            String cursor = null;
+            int pageIndex = 0;
+            do {
+                final long start = System.nanoTime();
+                final CursorPage page = cursorSearchService.search(expression, createSearchParameter(1), cursor);
+                page.getDocuments().forEach(document -> ids.add(document.get("id")));
+                cursor = page.getNextCursor();
+                if (++pageIndex % 10 == 0) {
+                    LOGGER.info("Page {} retrieved within {} ms", pageIndex, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+            } while (cursor != null);
+
+            if (ids.size() != DOCUMENT_COUNT) {
+                throw new IllegalStateException("Cursor paging returned " + ids.size() + " of " + DOCUMENT_COUNT + " documents!");
+            }
+            LOGGER.info("Retrieved all {} documents on {} pages", ids.size(), pageIndex);
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+
+    private SearchParameter createSearchParameter(int pageIndex) {
+        // Many documents share the same count, the cursor search adds the ID as tie-breaker
+        return SearchParameter.builder().pageSize(PAGE_SIZE).pageIndex(pageIndex).sortOptions(SortOption.asc("count")).build();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.searchafter;
+
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.samples.query.ExpressionQueryFactory;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cursor based paging for an index alias via search_after. In contrast to paging with page index and page size, every page costs the same
+ * regardless of its depth and pages beyond max_result_window can be retrieved. The sort options of the search parameter are completed by
+ * the document ID as unique tie-breaker, so no hit is skipped or returned twice between pages. The page index of the search parameter is
+ * ignored.
+ * <p>
+ * Cursors do not pin the state of the index: documents added or removed between two requests may shift following pages.
+ */
+public class CursorSearchService {
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private final RestHighLevelClient restClient;
+    private final String indexAlias;
+    private final ExpressionQueryFactory queryFactory;
+
+    public CursorSearchService(RestHighLevelClient restClient, String indexAlias, List<? extends FieldConfiguration> fieldConfigurations) {
+        this.restClient = restClient;
+        this.indexAlias = indexAlias;
+        this.queryFactory = new ExpressionQueryFactory(fieldConfigurations);
+    }
+
+    /**
+     * Searches one page.
+     *
+     * @param expression        Expression
+     * @param searchParameter   Search parameter defining page size and sort options
+     * @param cursor            Cursor of the page to retrieve or NULL for the first page
+     * @return Page with the cursor of the next page
+     * @throws IllegalArgumentException if the cursor is invalid or belongs to another search
+     */
+    public CursorPage search(Expression expression, SearchParameter searchParameter, String cursor) {
+        final QueryBuilder query = queryFactory.createQuery(expression, searchParameter);
+        final List<SortBuilder<?>> sorts = createSorts(searchParameter.getSortOptions());
+        final Integer pageSize = searchParameter.getPageSize();
+        final int size = (pageSize != null) ? pageSize : DEFAULT_PAGE_SIZE;
+        final byte[] fingerprint = SearchCursor.fingerprint(query.toString() + sorts);
+
+        final SearchSourceBuilder source = new SearchSourceBuilder().query(query).size(size).trackTotalHits(false);
+        sorts.forEach(source::sort);
+        if (cursor != null) {
+            source.searchAfter(SearchCursor.decode(cursor, fingerprint));
+        }
+
+        final SearchResponse response;
+        try {
+            response = restClient.search(new SearchRequest(indexAlias).source(source), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new RuntimeException("Cursor search in index alias '" + indexAlias + "' failed!", e);
+        }
+
+        final SearchHit[] hits = response.getHits().getHits();
+        final List<Map<String, Object>> documents = new ArrayList<>(hits.length);
+        for (final SearchHit hit : hits) {
+            documents.add(hit.getSourceAsMap());
+        }
+        // A full page may be followed by further hits, an empty page (page size 0) has no last hit to continue from
+        final String nextCursor = (hits.length > 0 && hits.length == size)
+                ? SearchCursor.encode(fingerprint, hits[hits.length - 1].getSortValues()) : null;
+        return new CursorPage(documents, nextCursor);
+    }
+
+    private List<SortBuilder<?>> createSorts(List<SortOption> sortOptions) {
+        final List<SortBuilder<?>> sorts = queryFactory.createSorts(sortOptions);
+        if (sorts.isEmpty()) {
+            sorts.add(SortBuilders.scoreSort());
+        }
+        if (sortOptions == null || sortOptions.stream().noneMatch(sortOption -> FieldConfiguration.FIELD_NAME_ID.equals(sortOption.getFieldName()))) {
+            // Document IDs are unique, so hits with equal values of all other sort fields have a defined order
+            sorts.add(SortBuilders.fieldSort(FieldConfiguration.FIELD_NAME_ID).order(SortOrder.ASC));
+        }
+        return sorts;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.searchafter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Opaque cursor token holding the sort values of the last hit of a page and a fingerprint of the search it belongs to. Tokens are URL safe
+ * and can be held by clients between requests.
+ */
+final class SearchCursor {
+
+    private static final byte VERSION = 2;
+    private static final int FINGERPRINT_LENGTH = 16;
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_STRING = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+
+    private SearchCursor() {
+    }
+
+    /**
+     * Creates the fingerprint of a search from the JSON representation of its query and sorts.
+     *
+     * @param search JSON representation of the search
+     * @return First 128 bits of the SHA-256 hash of the search
+     */
+    static byte[] fingerprint(String search) {
+        try {
+            return Arrays.copyOf(MessageDigest.getInstance("SHA-256").digest(search.getBytes(StandardCharsets.UTF_8)), FINGERPRINT_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported!", e);
+        }
+    }
+
+    static String encode(byte[] fingerprint, Object[] sortValues) {
+        try (ByteArrayOutputStream bytes = new ByteArrayOutputStream(); DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.write(fingerprint);
+            out.writeShort(sortValues.length);
+            for (final Object value : sortValues) {
+                writeValue(out, value);
+            }
+            out.flush();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new RuntimeException("Encoding search cursor failed!", e);
+        }
+    }
+
+    /**
+     * Decodes a cursor token.
+     *
+     * @param token         Cursor token
+     * @param fingerprint   Fingerprint of the current search
+     * @return Sort values of the last hit of the previous page
+     * @throws IllegalArgumentException if the token is malformed or belongs to another search
+     */
+    static Object[] decode(String token, byte[] fingerprint) {
+        final byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid search cursor: " + token, e);
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readByte() != VERSION) {
+                throw new IllegalArgumentException("Unsupported search cursor version!");
+            }
+            final byte[] tokenFingerprint = new byte[FINGERPRINT_LENGTH];
+            in.readFully(tokenFingerprint);
+            if (!Arrays.equals(tokenFingerprint, fingerprint)) {
+                throw new IllegalArgumentException("Search cursor belongs to another search!");
+            }
+            final Object[] sortValues = new Object[in.readShort()];
+            for (int i = 0; i < sortValues.length; i++) {
+                sortValues[i] = readValue(in);
+            }
+            return sortValues;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid search cursor: " + token, e);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else {
+            throw new IllegalArgumentException("Unsupported sort value type: " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        final byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_STRING:
+                return in.readUTF();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            default:
+                throw new IllegalArgumentException("Unsupported sort value type: " + type);
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.spool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead spool for document batches. Batches are appended to segment files via {@link FileChannel}, a single writer
+ * thread syncs all appends that arrived in the meantime with one fsync (group commit). Segments are rotated by size and deleted as soon
+ * as all of their batches have been acknowledged. Segments left over from a previous run are replayed by {@link #replay(Consumer)}.
+ */
+public class DocumentSpool implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DocumentSpool.class);
+
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final PendingAppend SHUTDOWN = new PendingAppend(null, null);
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final List<Path> recoveredSegments;
+    private final BlockingQueue<PendingAppend> appendQueue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+
+    private Segment activeSegment;
+    private long nextSegmentSequence;
+    private volatile boolean closed;
+
+    public DocumentSpool(Path directory, long maxSegmentBytes) {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        try {
+            Files.createDirectories(directory);
+            recoveredSegments = listSegments();
+            nextSegmentSequence = recoveredSegments.isEmpty() ? 1 : sequenceOf(recoveredSegments.get(recoveredSegments.size() - 1)) + 1;
+            activeSegment = openSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Opening spool directory '" + directory + "' failed!", e);
+        }
+
+        writerThread = new Thread(this::writeLoop, "document-spool-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Replays the batches of segments left over from a previous run. A segment is deleted after all its batches have been passed to the
+     * consumer without exception.
+     *
+     * @param consumer Consumer writing the batches to Elasticsearch
+     * @return Number of replayed batches
+     */
+    public synchronized int replay(Consumer<List<Map<String, Object>>> consumer) {
+        int batchCount = 0;
+        for (final Path segmentFile : new ArrayList<>(recoveredSegments)) {
+            final List<List<Map<String, Object>>> batches = readSegment(segmentFile);
+            for (final List<Map<String, Object>> batch : batches) {
+                consumer.accept(batch);
+                batchCount++;
+            }
+            deleteSegment(segmentFile);
+            recoveredSegments.remove(segmentFile);
+            LOGGER.info("Replayed {} batches of spool segment {}", batches.size(), segmentFile);
+        }
+        return batchCount;
+    }
+
+    /**
+     * Appends a batch of documents to the spool.
+     *
+     * @param documents Documents to append
+     * @return Future completed as soon as the batch has been synced to disk
+     */
+    public CompletableFuture<Record> append(List<Map<String, Object>> documents) {
+        final PendingAppend pendingAppend = new PendingAppend(serialize(documents), new CompletableFuture<>());
+        // Checked and enqueued atomically, so no append can be queued behind the shutdown marker
+        synchronized (appendQueue) {
+            if (closed) {
+                throw new IllegalStateException("Spool is closed!");
+            }
+            appendQueue.add(pendingAppend);
+        }
+        return pendingAppend.future;
+    }
+
+    public void acknowledge(Record record) {
+        final Segment segment = record.segment;
+        if (segment.pendingRecords.decrementAndGet() == 0 && segment.sealed) {
+            deleteSegment(segment.file);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (appendQueue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            appendQueue.add(SHUTDOWN);
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        final List<PendingAppend> group = new ArrayList<>();
+        boolean shutdown = false;
+        while (!shutdown) {
+            try {
+                group.add(appendQueue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            appendQueue.drainTo(group);
+            shutdown = group.remove(SHUTDOWN);
+
+            final List<Record> records = new ArrayList<>(group.size());
+            try {
+                for (final PendingAppend pendingAppend : group) {
+                    records.add(write(pendingAppend.payload));
+                }
+                // One fsync for the whole group
+                activeSegment.channel.force(false);
+                for (int i = 0; i < group.size(); i++) {
+                    group.get(i).future.complete(records.get(i));
+                }
+            } catch (IOException | RuntimeException e) {
+                for (final PendingAppend pendingAppend : group) {
+                    pendingAppend.future.completeExceptionally(e);
+                }
+            }
+            group.clear();
+        }
+
+        // Appends are only left over if the writer thread was interrupted, later appends are rejected
+        synchronized (appendQueue) {
+            closed = true;
+            appendQueue.drainTo(group);
+        }
+        final IllegalStateException closedException = new IllegalStateException("Spool is closed!");
+        for (final PendingAppend pendingAppend : group) {
+            if (pendingAppend != SHUTDOWN) {
+                pendingAppend.future.completeExceptionally(closedException);
+            }
+        }
+        sealActiveSegment();
+    }
+
+    private Record write(byte[] payload) throws IOException {
+        if (activeSegment.size > 0 && activeSegment.size + RECORD_HEADER_SIZE + payload.length > maxSegmentBytes) {
+            activeSegment.channel.force(false);
+            sealActiveSegment();
+            activeSegment = openSegment();
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        final ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (buffer.hasRemaining()) {
+            activeSegment.channel.write(buffer);
+        }
+        activeSegment.size += buffer.limit();
+        activeSegment.pendingRecords.incrementAndGet();
+        return new Record(activeSegment);
+    }
+
+    private void sealActiveSegment() {
+        final Segment segment = activeSegment;
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Closing spool segment {} failed", segment.file, e);
+        }
+        segment.sealed = true;
+        if (segment.pendingRecords.get() == 0) {
+            deleteSegment(segment.file);
+        }
+    }
+
+    private Segment openSegment() throws IOException {
+        final Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSegmentSequence++, SEGMENT_SUFFIX));
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        return new Segment(file, channel);
+    }
+
+    private List<Path> listSegments() throws IOException {
+        final List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Reads all batches of a segment. An incomplete or corrupt record at the tail of the segment is the result of an interrupted write,
+     * the segment is truncated before this record. A corrupt record followed by further records cannot be skipped safely and fails.
+     */
+    @SuppressWarnings("unchecked")
+    private List<List<Map<String, Object>>> readSegment(Path segmentFile) {
+        final List<List<Map<String, Object>>> batches = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            long position = 0;
+            while (position < channel.size()) {
+                header.clear();
+                if (!readFully(channel, header)) {
+                    truncateTail(channel, position, segmentFile, "incomplete record header");
+                    break;
+                }
+                header.flip();
+                final int length = header.getInt();
+                final int checksum = header.getInt();
+                final long available = channel.size() - position - RECORD_HEADER_SIZE;
+                if (length <= 0 || length > available) {
+                    truncateTail(channel, position, segmentFile, "incomplete record of " + length + " bytes");
+                    break;
+                }
+
+                final ByteBuffer payload = ByteBuffer.allocate(length);
+                if (!readFully(channel, payload)) {
+                    truncateTail(channel, position, segmentFile, "incomplete record of " + length + " bytes");
+                    break;
+                }
+                final CRC32 crc = new CRC32();
+                crc.update(payload.array());
+                if ((int) crc.getValue() != checksum) {
+                    if (length < available) {
+                        throw new IllegalStateException("Spool segment '" + segmentFile + "' contains a corrupt record at offset " + position
+                                + " followed by " + (available - length) + " more bytes!");
+                    }
+                    truncateTail(channel, position, segmentFile, "corrupt record");
+                    break;
+                }
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload.array()))) {
+                    batches.add((List<Map<String, Object>>) in.readObject());
+                }
+                position += RECORD_HEADER_SIZE + length;
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Reading spool segment '" + segmentFile + "' failed!", e);
+        }
+        return batches;
+    }
+
+    private void truncateTail(FileChannel channel, long position, Path segmentFile, String reason) throws IOException {
+        LOGGER.warn("Truncating spool segment {} at offset {}: {} at the end of the segment", segmentFile, position, reason);
+        channel.truncate(position);
+        channel.force(false);
+    }
+
+    private boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void deleteSegment(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("Deleting spool segment {} failed", file, e);
+        }
+    }
+
+    private static byte[] serialize(List<Map<String, Object>> documents) {
+        final ArrayList<HashMap<String, Object>> batch = new ArrayList<>(documents.size());
+        documents.forEach(document -> batch.add(new HashMap<>(document)));
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(batch);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Documents are not serializable!", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static long sequenceOf(Path segmentFile) {
+        final String name = segmentFile.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static class Segment {
+
+        private final Path file;
+        private final FileChannel channel;
+        private final AtomicInteger pendingRecords = new AtomicInteger();
+        private long size;
+        private volatile boolean sealed;
+
+        Segment(Path file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+    }
+
+    private static class PendingAppend {
+
+        private final byte[] payload;
+        private final CompletableFuture<Record> future;
+
+        PendingAppend(byte[] payload, CompletableFuture<Record> future) {
+            this.payload = payload;
+            this.future = future;
+        }
+    }
+
+    public static class Record {
+
+        private final Segment segment;
+
+        Record(Segment segment) {
+            this.segment = segment;
+        }
+    }
+}
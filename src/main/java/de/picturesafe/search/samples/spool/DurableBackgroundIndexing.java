@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.spool;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class DurableBackgroundIndexing implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DurableBackgroundIndexing.class);
+
+    private static final long MAX_SEGMENT_BYTES = 256 * 1024;
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(DurableBackgroundIndexing.class)) {
+            final DurableBackgroundIndexing durableBackgroundIndexing = ctx.getBean(DurableBackgroundIndexing.class);
+            durableBackgroundIndexing.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        Path spoolDirectory = null;
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            spoolDirectory = Files.createTempDirectory("picturesafe-search-spool");
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+
+            // Simulate a crash: documents are recorded in the spool, but never acknowledged by Elasticsearch
+            final DocumentSpool crashedSpool = new DocumentSpool(spoolDirectory, MAX_SEGMENT_BYTES);
+            crashedSpool.append(createDocuments(1, 100)).join();
+            crashedSpool.close();
+
+            try (SpoolingIndexer indexer = new SpoolingIndexer(elasticsearchService, indexAlias,
+                    new DocumentSpool(spoolDirectory, MAX_SEGMENT_BYTES), 4)) {
+                // Replay unacknowledged batches of the previous run
+                LOGGER.info("Recovered {} batch(es) from spool", indexer.recover());
+
+                final List<CompletableFuture<Void>> futures = new ArrayList<>();
+                for (long fromId = 101; fromId <= 10_000; fromId += 100) {
+                    futures.add(indexer.addToIndex(createDocuments(fromId, fromId + 99)));
+                }
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            }
+
+            // Make all background changes visible
+            singleIndexElasticsearchService.addToIndex(DataChangeProcessingMode.BLOCKING, createDocuments(10_001, 10_001));
+            final SearchResult searchResult = singleIndexElasticsearchService.search(new FulltextExpression("test title"), SearchParameter.DEFAULT);
+            LOGGER.info("Index contains {} documents", searchResult.getTotalHitCount());
+        } catch (IOException e) {
+            throw new RuntimeException("Creating spool directory failed!", e);
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+            deleteDirectory(spoolDirectory);
+        }
+    }
+
+    private List<Map<String, Object>> createDocuments(long fromId, long toId) {
+        return LongStream.rangeClosed(fromId, toId)
+                .mapToObj(id -> DocumentBuilder.id(id).put("title", "This is a test title " + id).put("count", id).build())
+                .collect(Collectors.toList());
+    }
+
+    private void deleteDirectory(Path directory) {
+        if (directory != null) {
+            final File[] files = directory.toFile().listFiles();
+            if (files != null) {
+                for (final File file : files) {
+                    file.delete();
+                }
+            }
+            directory.toFile().delete();
+        }
+    }
+}
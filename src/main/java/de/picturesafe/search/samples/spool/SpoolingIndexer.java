@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.spool;
+
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable variant of {@link DataChangeProcessingMode#BACKGROUND} data changes: each batch is recorded in a {@link DocumentSpool} before it is
+ * sent to Elasticsearch and acknowledged in the spool afterwards. Batches not acknowledged because of a JVM restart or a cluster outage are
+ * replayed by {@link #recover()}.
+ */
+public class SpoolingIndexer implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpoolingIndexer.class);
+
+    private final ElasticsearchService elasticsearchService;
+    private final String indexAlias;
+    private final DocumentSpool spool;
+    private final ExecutorService executorService;
+
+    public SpoolingIndexer(ElasticsearchService elasticsearchService, String indexAlias, DocumentSpool spool, int maxConcurrentRequests) {
+        this.elasticsearchService = elasticsearchService;
+        this.indexAlias = indexAlias;
+        this.spool = spool;
+        this.executorService = Executors.newFixedThreadPool(maxConcurrentRequests);
+    }
+
+    // Must be called on startup before new documents are added.
+    public int recover() {
+        return spool.replay(documents -> elasticsearchService.addToIndex(indexAlias, DataChangeProcessingMode.BLOCKING, documents));
+    }
+
+    /**
+     * Adds documents in background mode after they have been recorded durably.
+     *
+     * @param documents Documents to add
+     * @return Future completed when the documents have been acknowledged by Elasticsearch
+     */
+    public CompletableFuture<Void> addToIndex(List<Map<String, Object>> documents) {
+        return spool.append(documents).thenAcceptAsync(record -> {
+            try {
+                elasticsearchService.addToIndex(indexAlias, DataChangeProcessingMode.BACKGROUND, documents);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Indexing {} documents into index alias '{}' failed, they will be replayed on next startup", documents.size(), indexAlias);
+                throw e;
+            }
+            spool.acknowledge(record);
+        }, executorService);
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdown();
+        try {
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        spool.close();
+    }
+}
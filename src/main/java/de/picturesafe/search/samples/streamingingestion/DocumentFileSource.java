@@ -0,0 +1,189 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.streamingingestion;
+
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily reads documents from a NDJSON or CSV file. Only the current line is held on the heap, values are converted according to the
+ * field configuration of the target index alias.
+ */
+public abstract class DocumentFileSource implements Iterator<Map<String, Object>>, AutoCloseable {
+
+    private final MappedLineReader lineReader;
+    protected final FieldValueConverter fieldValueConverter;
+
+    private Map<String, Object> nextDocument;
+    private long lineNumber;
+
+    protected DocumentFileSource(Path file, List<? extends FieldConfiguration> fieldConfigurations) {
+        try {
+            this.lineReader = new MappedLineReader(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Opening file '" + file + "' failed!", e);
+        }
+        this.fieldValueConverter = new FieldValueConverter(fieldConfigurations);
+    }
+
+    public static DocumentFileSource ndjson(Path file, List<? extends FieldConfiguration> fieldConfigurations) {
+        return new NdjsonSource(file, fieldConfigurations);
+    }
+
+    public static DocumentFileSource csv(Path file, List<? extends FieldConfiguration> fieldConfigurations) {
+        return new CsvSource(file, fieldConfigurations);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextDocument == null) {
+            nextDocument = readNextDocument();
+        }
+        return nextDocument != null;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final Map<String, Object> document = nextDocument;
+        nextDocument = null;
+        return document;
+    }
+
+    @Override
+    public void close() {
+        try {
+            lineReader.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Closing file failed!", e);
+        }
+    }
+
+    protected abstract Map<String, Object> parseLine(String line) throws IOException;
+
+    protected String readLine() {
+        try {
+            lineNumber++;
+            return lineReader.readLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reading line " + lineNumber + " failed!", e);
+        }
+    }
+
+    private Map<String, Object> readNextDocument() {
+        String line;
+        while ((line = readLine()) != null) {
+            if (!line.trim().isEmpty()) {
+                try {
+                    return parseLine(line);
+                } catch (IOException | RuntimeException e) {
+                    throw new IllegalStateException("Parsing line " + lineNumber + " failed!", e);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static class NdjsonSource extends DocumentFileSource {
+
+        NdjsonSource(Path file, List<? extends FieldConfiguration> fieldConfigurations) {
+            super(file, fieldConfigurations);
+        }
+
+        @Override
+        protected Map<String, Object> parseLine(String line) throws IOException {
+            try (XContentParser parser = XContentType.JSON.xContent()
+                    .createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, line)) {
+                final Map<String, Object> values = parser.map();
+                final Map<String, Object> document = new HashMap<>(values.size() * 2);
+                values.forEach((name, value) -> document.put(name, fieldValueConverter.convert(name, value)));
+                return document;
+            }
+        }
+    }
+
+    private static class CsvSource extends DocumentFileSource {
+
+        private final List<String> header;
+
+        CsvSource(Path file, List<? extends FieldConfiguration> fieldConfigurations) {
+            super(file, fieldConfigurations);
+            final String headerLine = readLine();
+            if (headerLine == null) {
+                throw new IllegalArgumentException("CSV file '" + file + "' has no header line!");
+            }
+            this.header = splitLine(headerLine);
+        }
+
+        @Override
+        protected Map<String, Object> parseLine(String line) {
+            final List<String> values = splitLine(line);
+            final Map<String, Object> document = new HashMap<>(header.size() * 2);
+            for (int i = 0; i < header.size() && i < values.size(); i++) {
+                final String value = values.get(i);
+                if (!fieldValueConverter.isEmptyValue(value)) {
+                    document.put(header.get(i), fieldValueConverter.convert(header.get(i), value));
+                }
+            }
+            return document;
+        }
+
+        // Comma separated values, optionally enclosed in double quotes ("" escapes a quote). Line breaks within values are not supported.
+        private static List<String> splitLine(String line) {
+            final List<String> values = new ArrayList<>();
+            final StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                final char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        value.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        value.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                } else {
+                    value.append(c);
+                }
+            }
+            values.add(value.toString());
+            return values;
+        }
+    }
+}
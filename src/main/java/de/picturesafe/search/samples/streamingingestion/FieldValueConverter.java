@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.streamingingestion;
+
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Converts raw values read from files to the types expected by the field configuration of an index alias.
+ */
+public class FieldValueConverter {
+
+    private final Map<String, String> fieldTypes = new HashMap<>();
+
+    public FieldValueConverter(List<? extends FieldConfiguration> fieldConfigurations) {
+        for (final FieldConfiguration fieldConfiguration : fieldConfigurations) {
+            fieldTypes.put(fieldConfiguration.getName(), fieldConfiguration.getElasticsearchType().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public Object convert(String fieldName, Object value) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof Collection) {
+            final List<Object> values = new ArrayList<>(((Collection<?>) value).size());
+            for (final Object element : (Collection<?>) value) {
+                values.add(convert(fieldName, element));
+            }
+            return values;
+        }
+
+        final String type = fieldTypes.get(fieldName);
+        if (type == null) {
+            return value;
+        }
+
+        try {
+            switch (type) {
+                case "BYTE":
+                case "SHORT":
+                case "INTEGER":
+                    return (value instanceof Number) ? ((Number) value).intValue() : Integer.parseInt(value.toString().trim());
+                case "LONG":
+                    return (value instanceof Number) ? ((Number) value).longValue() : Long.parseLong(value.toString().trim());
+                case "FLOAT":
+                case "DOUBLE":
+                    return (value instanceof Number) ? ((Number) value).doubleValue() : Double.parseDouble(value.toString().trim());
+                case "BOOLEAN":
+                    return (value instanceof Boolean) ? value : Boolean.parseBoolean(value.toString().trim());
+                case "DATE":
+                    return toDate(value);
+                default:
+                    return value;
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Converting value '" + value + "' of field '" + fieldName + "' to type " + type + " failed!", e);
+        }
+    }
+
+    public boolean isEmptyValue(Object value) {
+        return value == null || (value instanceof String && ((String) value).isEmpty());
+    }
+
+    private Date toDate(Object value) {
+        if (value instanceof Date) {
+            return (Date) value;
+        } else if (value instanceof Number) {
+            return new Date(((Number) value).longValue());
+        }
+
+        final String text = value.toString().trim();
+        try {
+            return Date.from(Instant.parse(text));
+        } catch (DateTimeParseException e) {
+            return Date.from(LocalDate.parse(text).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        }
+    }
+}
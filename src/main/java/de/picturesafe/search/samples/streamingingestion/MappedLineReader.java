@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.streamingingestion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads UTF-8 lines from a file through a sliding memory-mapped window, so the heap only holds the current line.
+ */
+class MappedLineReader implements Closeable {
+
+    static final int DEFAULT_WINDOW_SIZE = 32 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private int windowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+    private byte[] lineBuffer = new byte[1024];
+
+    MappedLineReader(Path file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedLineReader(Path file, int windowSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    // Returns the next line without line terminator or null at the end of the file.
+    String readLine() throws IOException {
+        if (position >= fileSize) {
+            return null;
+        }
+
+        while (true) {
+            mapWindow(position);
+            final int start = (int) (position - windowStart);
+            final int end = window.limit();
+            int i = start;
+            while (i < end && window.get(i) != '\n') {
+                i++;
+            }
+
+            final boolean lineComplete = i < end || windowStart + end == fileSize;
+            if (lineComplete) {
+                final String line = decode(start, i);
+                position = windowStart + Math.min(i + 1, end);
+                return line;
+            }
+
+            if (start == 0) {
+                // Line is longer than the window
+                windowSize = (int) Math.min((long) windowSize * 2, Integer.MAX_VALUE);
+            }
+            window = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private void mapWindow(long requiredPosition) throws IOException {
+        if (window == null || requiredPosition < windowStart || requiredPosition >= windowStart + window.limit()) {
+            windowStart = requiredPosition;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(windowSize, fileSize - windowStart));
+        }
+    }
+
+    private String decode(int start, int end) {
+        int length = end - start;
+        if (length > 0 && window.get(end - 1) == '\r') {
+            length--;
+        }
+        if (lineBuffer.length < length) {
+            lineBuffer = new byte[Math.max(length, lineBuffer.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            lineBuffer[i] = window.get(start + i);
+        }
+        return new String(lineBuffer, 0, length, StandardCharsets.UTF_8);
+    }
+}
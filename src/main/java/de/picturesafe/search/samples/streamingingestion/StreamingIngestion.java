@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.streamingingestion;
+
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import de.picturesafe.search.samples.bulkindexing.BulkIndexer;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+@Component
+@ComponentScan
+public class StreamingIngestion implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingIngestion.class);
+
+    private static final int DOCUMENT_COUNT = 10_000;
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(StreamingIngestion.class)) {
+            final StreamingIngestion streamingIngestion = ctx.getBean(StreamingIngestion.class);
+            streamingIngestion.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        Path ndjsonFile = null;
+        Path csvFile = null;
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            ndjsonFile = createNdjsonFile();
+            csvFile = createCsvFile();
+
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+            final List<? extends FieldConfiguration> fieldConfigurations = fieldConfigurationProvider.getFieldConfigurations(indexAlias);
+
+            // Documents are read lazily and sent in chunks, so the heap usage depends on the chunk size and not on the file size.
+            try (DocumentFileSource source = DocumentFileSource.ndjson(ndjsonFile, fieldConfigurations)) {
+                ingest(indexAlias, source);
+            }
+            try (DocumentFileSource source = DocumentFileSource.csv(csvFile, fieldConfigurations)) {
+                ingest(indexAlias, source);
+            }
+
+            final Expression expression = OperationExpression.and(
+                    new FulltextExpression("test title"),
+                    new ValueExpression("count", ValueExpression.Comparison.GE, DOCUMENT_COUNT - 5));
+            final SearchResult searchResult = singleIndexElasticsearchService.search(expression, SearchParameter.DEFAULT);
+            LOGGER.info(searchResult.toString());
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+            deleteQuietly(ndjsonFile);
+            deleteQuietly(csvFile);
+        }
+    }
+
+    private void ingest(String indexAlias, DocumentFileSource source) {
+        try (BulkIndexer bulkIndexer = BulkIndexer.builder(elasticsearchService, restClient, indexAlias)
+                .maxBatchDocuments(500)
+                .maxConcurrentRequests(2)
+                .build()) {
+            source.forEachRemaining(bulkIndexer::add);
+            LOGGER.info("Ingested {}", bulkIndexer.flush());
+        }
+    }
+
+    private Path createNdjsonFile() {
+        try {
+            final Path file = Files.createTempFile("picturesafe-search-sample", ".ndjson");
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                final LocalDate today = LocalDate.now();
+                for (int id = 1; id <= DOCUMENT_COUNT; id++) {
+                    writer.write("{\"id\":" + id + ",\"title\":\"This is a test title " + id + "\",\"count\":" + id
+                            + ",\"created\":\"" + today.minusDays(id % 365) + "\"}");
+                    writer.newLine();
+                }
+            }
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Creating NDJSON file failed!", e);
+        }
+    }
+
+    private Path createCsvFile() {
+        try {
+            final Path file = Files.createTempFile("picturesafe-search-sample", ".csv");
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writer.write("id,title,count,created");
+                writer.newLine();
+                final LocalDate today = LocalDate.now();
+                for (int id = DOCUMENT_COUNT + 1; id <= 2 * DOCUMENT_COUNT; id++) {
+                    writer.write(id + ",\"This is a test title, number " + id + "\"," + id + "," + today.minusDays(id % 365));
+                    writer.newLine();
+                }
+            }
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Creating CSV file failed!", e);
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete file {}", file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.streamingsearch;
+
+import de.picturesafe.search.elasticsearch.model.SearchResultItem;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receives the parts of a search response while it is parsed by the {@link StreamingSearchService}, in the order total hit count, hits
+ * and facets. Partial responses are reported before any hit.
+ */
+public interface SearchResultHandler {
+
+    /**
+     * Receives the failures of a partial response, i.e. a response with failed shards or a timed out search. Hits and facets of partial
+     * responses are incomplete, so partial responses are rejected by default.
+     *
+     * @param totalShards   Number of shards searched
+     * @param failedShards  Number of failed shards
+     * @param timedOut      TRUE if the search has timed out
+     * @param failures      Reasons of the shard failures
+     */
+    default void onPartialResult(int totalShards, int failedShards, boolean timedOut, List<String> failures) {
+        throw new IllegalStateException("Search failed on " + failedShards + " of " + totalShards + " shards" + (timedOut ? " and timed out" : "")
+                + ": " + failures);
+    }
+
+    default void onTotalHits(long totalHitCount, boolean exact) {
+    }
+
+    void onHit(SearchResultItem item);
+
+    /**
+     * Receives a facet after all hits.
+     *
+     * @param fieldName Name of the faceted field
+     * @param counts    Document counts per value ordered by count
+     */
+    default void onFacet(String fieldName, Map<String, Long> counts) {
+    }
+}
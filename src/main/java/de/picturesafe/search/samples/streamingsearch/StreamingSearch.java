@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.streamingsearch;
+
+import de.picturesafe.search.elasticsearch.ElasticsearchService;
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.SingleIndexElasticsearchService;
+import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.elasticsearch.model.SearchResultItem;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.samples.PicturesafeSearchSample;
+import de.picturesafe.search.samples.bulkindexing.BulkIndexer;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+@Component
+@ComponentScan
+public class StreamingSearch implements PicturesafeSearchSample {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingSearch.class);
+
+    private static final int DOCUMENT_COUNT = 10_000;
+    private static final String[] KEYWORDS = {"red", "green", "blue", "yellow"};
+
+    @Autowired
+    private SingleIndexElasticsearchService singleIndexElasticsearchService;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private IndexPresetConfiguration indexPresetConfiguration;
+
+    @Autowired
+    private FieldConfigurationProvider fieldConfigurationProvider;
+
+    @Autowired
+    private RestHighLevelClient restClient;
+
+    public static void main(String[] args) {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(StreamingSearch.class)) {
+            final StreamingSearch streamingSearch = ctx.getBean(StreamingSearch.class);
+            streamingSearch.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            singleIndexElasticsearchService.createIndexWithAlias();
+            final String indexAlias = indexPresetConfiguration.getIndexAlias();
+            try (BulkIndexer bulkIndexer = BulkIndexer.builder(elasticsearchService, restClient, indexAlias).build()) {
+                LongStream.rangeClosed(1, DOCUMENT_COUNT).forEach(id -> bulkIndexer.add(DocumentBuilder.id(id)
+                        .put("title", "This is a test title " + id)
+                        .put("keyword", KEYWORDS[(int) (id % KEYWORDS.length)])
+                        .put("quantity", id % 1000)
+                        .build()));
+                bulkIndexer.flush();
+            }
+
+            final StreamingSearchService streamingSearchService = new StreamingSearchService(restClient, fieldConfigurationProvider);
+            final Expression expression = new FulltextExpression("test title");
+            // Export sized page, processed hit by hit without holding the items of the page
+            final SearchParameter searchParameter = SearchParameter.builder().pageSize(DOCUMENT_COUNT).pageIndex(1)
+                    .sortOptions(SortOption.asc("id")).build();
+
+            final long start = System.nanoTime();
+            final long[] hitCount = new long[1];
+            final long[] quantitySum = new long[1];
+            streamingSearchService.search(indexAlias, expression, searchParameter, Arrays.asList("keyword", "quantity"), 5, new SearchResultHandler() {
+                @Override
+                public void onTotalHits(long totalHitCount, boolean exact) {
+                    LOGGER.info("Streaming {} total hits", totalHitCount);
+                }
+
+                @Override
+                public void onHit(SearchResultItem item) {
+                    hitCount[0]++;
+                    quantitySum[0] += ((Number) item.getAttribute("quantity")).longValue();
+                }
+
+                @Override
+                public void onFacet(String fieldName, Map<String, Long> counts) {
+                    LOGGER.info("Facet '{}': {}", fieldName, counts);
+                }
+            });
+            LOGGER.info("Processed {} hits (quantity sum {}) within {} ms", hitCount[0], quantitySum[0],
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } finally {
+            singleIndexElasticsearchService.deleteIndexWithAlias();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.samples.streamingsearch;
+
+import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.elasticsearch.model.SearchResultItem;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.samples.query.ExpressionQueryFactory;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Search handing each hit and facet to a {@link SearchResultHandler} while the response is parsed, instead of materializing the complete
+ * result. Only the hit currently parsed is held in memory, so large pages can be processed with constant heap usage for result objects.
+ * Failed shards and timeouts are reported to the handler before the first hit.
+ * <p>
+ * The request is sent via the low level client, which still buffers the raw response bytes. Hits are parsed from the buffer one by one,
+ * without building the search hits, aggregations and result items of the whole page at once.
+ */
+public class StreamingSearchService {
+
+    private static final String FACET_PREFIX = "facet:";
+    private static final String KEYWORD_SUFFIX = ".keyword";
+
+    private final RestHighLevelClient restClient;
+    private final FieldConfigurationProvider fieldConfigurationProvider;
+    private final Map<String, ExpressionQueryFactory> queryFactories = new ConcurrentHashMap<>();
+
+    public StreamingSearchService(RestHighLevelClient restClient, FieldConfigurationProvider fieldConfigurationProvider) {
+        this.restClient = restClient;
+        this.fieldConfigurationProvider = fieldConfigurationProvider;
+    }
+
+    public void search(String indexAlias, Expression expression, SearchParameter searchParameter, SearchResultHandler handler) {
+        search(indexAlias, expression, searchParameter, Collections.emptyList(), 0, handler);
+    }
+
+    /**
+     * Searches and hands the result to a handler while it is parsed.
+     *
+     * @param indexAlias        Index alias
+     * @param expression        Expression
+     * @param searchParameter   Search parameter
+     * @param facetFields       Names of the fields to create facets for
+     * @param maxFacetValues    Maximum number of values per facet
+     * @param handler           Handler receiving total hit count, hits and facets
+     */
+    public void search(String indexAlias, Expression expression, SearchParameter searchParameter, List<String> facetFields, int maxFacetValues,
+                       SearchResultHandler handler) {
+        final SearchSourceBuilder source = getQueryFactory(indexAlias).createSearchSource(expression, searchParameter);
+        // Facet fields mapped by aggregation name
+        final Map<String, String> facetAggregations = new HashMap<>();
+        for (final String facetField : facetFields) {
+            final String aggregatedField = isText(getFieldConfiguration(indexAlias, facetField)) ? facetField + KEYWORD_SUFFIX : facetField;
+            source.aggregation(AggregationBuilders.terms(FACET_PREFIX + aggregatedField).field(aggregatedField).size(maxFacetValues));
+            facetAggregations.put(FACET_PREFIX + aggregatedField, facetField);
+        }
+
+        final Request request = new Request("POST", "/" + indexAlias + "/_search");
+        request.setJsonEntity(source.toString());
+        try {
+            final Response response = restClient.getLowLevelClient().performRequest(request);
+            try (InputStream in = response.getEntity().getContent();
+                 XContentParser parser = XContentType.JSON.xContent()
+                         .createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, in)) {
+                parseResponse(parser, facetAggregations, handler);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Search in index alias '" + indexAlias + "' failed!", e);
+        }
+    }
+
+    private void parseResponse(XContentParser parser, Map<String, String> facetAggregations, SearchResultHandler handler) throws IOException {
+        // Elasticsearch renders the status before hits and aggregations
+        boolean timedOut = false;
+        Map<String, Object> shards = null;
+        parser.nextToken();
+        while (parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            final String name = parser.currentName();
+            parser.nextToken();
+            if ("timed_out".equals(name)) {
+                timedOut = parser.booleanValue();
+            } else if ("_shards".equals(name)) {
+                shards = parser.map();
+            } else if ("hits".equals(name)) {
+                checkPartialResult(timedOut, shards, handler);
+                parseHits(parser, handler);
+            } else if ("aggregations".equals(name)) {
+                parseAggregations(parser, facetAggregations, handler);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void checkPartialResult(boolean timedOut, Map<String, Object> shards, SearchResultHandler handler) {
+        final int totalShards = (shards != null) ? ((Number) shards.get("total")).intValue() : 0;
+        final int failedShards = (shards != null) ? ((Number) shards.get("failed")).intValue() : 0;
+        if (timedOut || failedShards > 0) {
+            final List<String> failures = new ArrayList<>();
+            if (shards != null && shards.get("failures") instanceof List) {
+                ((List<Object>) shards.get("failures")).forEach(failure -> failures.add(String.valueOf(failure)));
+            }
+            handler.onPartialResult(totalShards, failedShards, timedOut, failures);
+        }
+    }
+
+    private void parseHits(XContentParser parser, SearchResultHandler handler) throws IOException {
+        while (parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            final String name = parser.currentName();
+            parser.nextToken();
+            if ("total".equals(name)) {
+                final Map<String, Object> total = parser.map();
+                handler.onTotalHits(((Number) total.get("value")).longValue(), "eq".equals(total.get("relation")));
+            } else if ("hits".equals(name)) {
+                while (parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                    handler.onHit(parseHit(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private SearchResultItem parseHit(XContentParser parser) throws IOException {
+        Map<String, Object> source = Collections.emptyMap();
+        while (parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            final String name = parser.currentName();
+            parser.nextToken();
+            if ("_source".equals(name)) {
+                source = parser.map();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new SearchResultItem(source);
+    }
+
+    private void parseAggregations(XContentParser parser, Map<String, String> facetAggregations, SearchResultHandler handler) throws IOException {
+        while (parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            final String facetField = facetAggregations.get(parser.currentName());
+            parser.nextToken();
+            if (facetField == null) {
+                parser.skipChildren();
+                continue;
+            }
+
+            final Map<String, Long> counts = new LinkedHashMap<>();
+            while (parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                final String name = parser.currentName();
+                parser.nextToken();
+                if ("buckets".equals(name)) {
+                    while (parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                        final Map<String, Object> bucket = parser.map();
+                        counts.put(String.valueOf(bucket.get("key")), ((Number) bucket.get("doc_count")).longValue());
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            handler.onFacet(facetField, counts);
+        }
+    }
+
+    private FieldConfiguration getFieldConfiguration(String indexAlias, String fieldName) {
+        for (final FieldConfiguration fieldConfiguration : fieldConfigurationProvider.getFieldConfigurations(indexAlias)) {
+            if (fieldConfiguration.getName().equals(fieldName)) {
+                return fieldConfiguration;
+            }
+        }
+        throw new IllegalArgumentException("Facet field '" + fieldName + "' is unknown in index alias '" + indexAlias + "'!");
+    }
+
+    private ExpressionQueryFactory getQueryFactory(String indexAlias) {
+        return queryFactories.computeIfAbsent(indexAlias,
+                alias -> new ExpressionQueryFactory(fieldConfigurationProvider.getFieldConfigurations(alias)));
+    }
+
+    private static boolean isText(FieldConfiguration fieldConfiguration) {
+        return "TEXT".equals(fieldConfiguration.getElasticsearchType().toUpperCase(Locale.ROOT));
+    }
+}